@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs a script of gitlet commands on one Repo, in one JVM.  Each line
+ *  is one command, written as on the command line without the leading
+ *  "gitlet": words are separated by blanks, and a word may be quoted
+ *  with double quotes, inside which a backslash escapes the next
+ *  character.  Blank lines and lines starting with # are skipped.  What
+ *  the commands change is written back once at the end of the script,
+ *  at each line that says "checkpoint", and every CHECKPOINT commands if
+ *  -Dgitlet.checkpoint is set.
+ *  @author Claire Ding
+ */
+public class Batch {
+
+    /** Number of commands between checkpoints, 0 for none. */
+    static final int CHECKPOINT = Integer.getInteger("gitlet.checkpoint", 0);
+
+    /** Run every command read from SCRIPT on RP.
+     *  @param rp is the repository.
+     *  @param script is the commands, one per line. */
+    static void run(Repo rp, Reader script) throws IOException {
+        BufferedReader in = new BufferedReader(script, Utils.CHUNK_SIZE);
+        int count = 0;
+        try {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                List<String> words = words(line);
+                if (words.isEmpty() || words.get(0).startsWith("#")) {
+                    continue;
+                }
+                if (words.size() == 1 && words.get(0).equals("checkpoint")) {
+                    rp.flush();
+                    continue;
+                }
+                if (words.get(0).equals("batch")
+                        || words.get(0).equals("daemon")) {
+                    Utils.message("Cannot run %s in a batch.", words.get(0));
+                    continue;
+                }
+                Main.dispatch(rp, words.toArray(new String[0]));
+                count += 1;
+                if (CHECKPOINT > 0 && count % CHECKPOINT == 0) {
+                    rp.flush();
+                }
+            }
+        } finally {
+            rp.flush();
+            System.out.flush();
+        }
+    }
+
+    /** Return the words of LINE.
+     *  @param line is one command. */
+    static List<String> words(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    i += 1;
+                    word.append(line.charAt(i));
+                } else {
+                    word.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    result.add(word.toString());
+                    word = null;
+                }
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                if (c == '"') {
+                    quoted = true;
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (word != null) {
+            result.add(word.toString());
+        }
+        return result;
+    }
+}
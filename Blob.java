@@ -10,22 +10,18 @@ public class Blob implements Serializable {
     private File bloby;
     /**The SHA1 code of the byte of the file.*/
     private String blobCode;
-    /**The content of the file in bytes.*/
-    private byte[] contentByte;
 
+    /** The file is hashed piece by piece, so a Blob never holds the
+     *  whole content in memory no matter how large the file is.
+     *  @param fname is the file name.*/
     public Blob(String fname) {
         name = fname;
         bloby = new File(fname);
-        contentByte = Utils.readContents(bloby);
-        blobCode = Utils.sha1(name, contentByte);
+        blobCode = Utils.sha1(name, bloby);
     }
 
     /** Return the SHA1 code of the Blob object.*/
     public String getBlobCode() {
         return blobCode;
     }
-    /** Return the byte of the content of Blob object.*/
-    public byte[] getContentByte() {
-        return contentByte;
-    }
 }
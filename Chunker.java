@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Splits a stream into chunks at places chosen by its content, so that
+ *  an insertion or a deletion only changes the chunks around it: the
+ *  chunks before and after it are the same as in the old version, and
+ *  can be stored once for both.  A chunk ends after a byte where the top
+ *  BITS bits of a gear hash are all zero.  The gear hash of a position
+ *  depends only on the 64 bytes before it, so the ends do not move when
+ *  bytes further back change.  Chunks are at least MIN and at most MAX
+ *  bytes long, except for the last one.
+ *  @author Claire Ding
+ */
+class Chunker {
+
+    /** Shortest chunk, except for the last one. */
+    static final int MIN = 16 << 10;
+    /** Longest chunk. */
+    static final int MAX = 256 << 10;
+    /** Number of top bits of the hash that must be zero at the end of a
+     *  chunk, so that chunks are about MIN + 2^BITS bytes long. */
+    static final int BITS = 16;
+    /** Bytes of the window of the gear hash. */
+    private static final int WINDOW = Long.SIZE;
+    /** Seed of GEAR; changing it would change every chunk. */
+    private static final long SEED = 0x676974_6c6574L;
+    /** Random value added to the hash for each byte value. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(SEED);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** The stream being split. */
+    private final InputStream in;
+    /** Bytes read from IN and not returned yet, from 0 to FILLED. */
+    private final byte[] buffer = new byte[MAX];
+    /** Number of bytes in BUFFER. */
+    private int filled;
+
+    /** A Chunker splitting IN.
+     *  @param in is the stream to split. */
+    Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /** Return the next chunk, or null at the end of the stream. */
+    byte[] next() {
+        try {
+            filled += in.readNBytes(buffer, filled, MAX - filled);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (filled == 0) {
+            return null;
+        }
+        int end = filled;
+        long hash = 0;
+        for (int i = Math.max(0, MIN - WINDOW); i < filled; i += 1) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            if (i + 1 >= MIN && hash >>> (Long.SIZE - BITS) == 0) {
+                end = i + 1;
+                break;
+            }
+        }
+        byte[] result = Arrays.copyOf(buffer, end);
+        System.arraycopy(buffer, end, buffer, 0, filled - end);
+        filled -= end;
+        return result;
+    }
+}
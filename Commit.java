@@ -1,58 +1,178 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 
 
 import static gitlet.Utils.message;
-import static gitlet.Utils.serialize;
 
 
 public class Commit implements Serializable {
 
+    /**Pinned to the value Java computed for the original class, so that
+     * adding methods neither breaks reading old commits nor changes the
+     * SHA1 codes of new ones.*/
+    private static final long serialVersionUID = 6408327979512991676L;
+
     /**String formatter for timestamp.*/
-    private String formatter = "EEE MMM d HH:mm:ss yyyy Z";
+    static final String FORMATTER = "EEE MMM d HH:mm:ss yyyy Z";
+
+    /**Year given to Date for the time stamp of the initial commit.*/
+    static final int INITIAL_YEAR = 1970;
+
+    /**First byte of an encoded commit.  Commits written with Java
+     * serialization, before there was an encoding, start with 0xAC.*/
+    static final byte FORMAT = 'C';
+
+    /**Version of the encoding.*/
+    static final byte VERSION = 1;
 
     /**Create a new commit. Taking in metadata/commit message, its parent's
-     * sha1 code, the blob, generates the timestamp. Change the HEAD and
-     * Master to the newly created commit.
-     * @param curBlob Blob of the commit;
+     * sha1 code, the tree of its files, generates the timestamp. Change
+     * the HEAD and Master to the newly created commit.
+     * @param tree SHA1 code of the root tree of the commit;
      * @param parent code of the parent;
      * @param message commit message.*/
     public Commit(String message, String parent,
-                  HashMap<String, String> curBlob) throws IOException {
+                  String tree) throws IOException {
         if (message.equals("initial commit") && parent == null) {
-            timeStamp = new SimpleDateFormat(formatter).
-                            format(new Date(a, 1, 1, 0, 0, 0));
+            timeStamp = new SimpleDateFormat(FORMATTER).
+                            format(new Date(INITIAL_YEAR, 1, 1, 0, 0, 0));
         } else {
             timeStamp = createTimeStamp();
         }
         commitMessage = message;
         parentID = parent;
-        blob = curBlob;
+        treeID = tree;
         shaID = hashID(this);
     }
 
     public Commit(String message, String parent1, String parent2,
-                  HashMap<String, String> curBlob) throws IOException {
+                  String tree) throws IOException {
         timeStamp = createTimeStamp();
         commitMessage = message;
         parentID = parent1;
         parentID2 = parent2;
         hasParent2 = true;
-        blob = curBlob;
+        treeID = tree;
         shaID = hashID(this);
     }
 
+    /**Used by decode, which fills in the fields itself.*/
+    private Commit() {
+    }
 
-    /**Generates a SHA1 code for the given object.
+    /**Generates a SHA1 code for the given object, from its encoding, so
+     * that it does not depend on how the JVM lays out the class.
      * @return String returns a string
      * @param obj is the param*/
     protected String hashID(Commit obj) {
-        return Utils.sha1(serialize(obj));
+        return Utils.sha1(obj.encode());
+    }
+
+    /**Return the commit as stored: FORMAT, VERSION, then the time stamp,
+     * message, first parent, second parent and tree, each as an int
+     * length (-1 for null) and that many bytes of UTF-8.  The SHA1 code
+     * itself is not stored; it is the name the commit is stored under.*/
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeByte(VERSION);
+            writeString(out, timeStamp);
+            writeString(out, commitMessage);
+            writeString(out, parentID);
+            writeString(out, hasParent2 ? parentID2 : null);
+            writeString(out, treeID);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**Return the commit ID from its stored BYTES, as written by encode.
+     * @param id is the SHA1 code of the commit.
+     * @param bytes is its encoding.*/
+    public static Commit decode(String id, byte[] bytes) {
+        Commit result = new Commit();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != FORMAT || in.readByte() != VERSION) {
+                throw new IllegalArgumentException("bad commit " + id);
+            }
+            result.timeStamp = readString(in);
+            result.commitMessage = readString(in);
+            result.parentID = readString(in);
+            result.parentID2 = readString(in);
+            result.hasParent2 = result.parentID2 != null;
+            result.treeID = readString(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        result.shaID = id;
+        return result;
+    }
+
+    /**Return the commit ID from STORE, whether it was written by encode
+     * or, before there was an encoding, with Java serialization.
+     * @param store is the commit store.
+     * @param id is the SHA1 code of the commit.*/
+    public static Commit read(ObjectStore store, String id) {
+        byte[] bytes = store.read(id);
+        if (isEncoded(bytes)) {
+            return decode(id, bytes);
+        }
+        return store.readObject(id, Commit.class);
+    }
+
+    /**Return whether the stored commit BYTES were written by encode.
+     * @param bytes is a stored commit.*/
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == FORMAT;
+    }
+
+    /**Write S, which may be null, to OUT.
+     * @param out is the stream.
+     * @param s is the string.*/
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /**Read a string written by writeString from IN.
+     * @param in is the stream.*/
+    private static String readString(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) {
+            return null;
+        }
+        byte[] b = new byte[n];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**Give a commit made before there were trees the tree TREE holding
+     * the same files, and drop its flat map, so that it can be encoded.
+     * Its SHA1 code does not change.
+     * @param tree is the SHA1 code of the tree of its files.*/
+    void migrateTo(String tree) {
+        treeID = tree;
+        blob = null;
     }
 
 
@@ -64,7 +184,7 @@ public class Commit implements Serializable {
 
     /**Return string formatter.*/
     public String getFormatter() {
-        return formatter;
+        return FORMATTER;
     }
 
     /** Return the commit Message given commit ID.*/
@@ -84,10 +204,29 @@ public class Commit implements Serializable {
         return timeStamp;
     }
 
+    /**Return the time of the commit in seconds since 1970, 0 if the
+     * time stamp cannot be read back.*/
+    public long getTime() {
+        try {
+            return new SimpleDateFormat(getFormatter()).parse(timeStamp)
+                    .getTime() / 1000;
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
+    /**Return the flat map of files of a commit made before there were
+     * trees, null for newer commits.*/
     public HashMap<String, String> getBlob() {
         return blob;
     }
 
+    /**Return the SHA1 code of the root tree, null for commits made
+     * before there were trees.*/
+    public String getTreeID() {
+        return treeID;
+    }
+
     public void myLog() {
         message("===");
         String commMess = "commit " + getShaID();
@@ -97,6 +236,14 @@ public class Commit implements Serializable {
         message(getCommitMessage());
         message("");
     }
+
+    /**Return what myLog prints, as one String.*/
+    public String logEntry() {
+        String nl = System.lineSeparator();
+        return "===" + nl + "commit " + getShaID() + nl
+                + "Date: " + getTimeStamp() + nl
+                + getCommitMessage() + nl + nl;
+    }
     public boolean isHasParent2() {
         return hasParent2;
     }
@@ -119,15 +266,16 @@ public class Commit implements Serializable {
     private String parentID;
 
     /**the hashmap of blob inherited directly from stage.
-     * Key is the file name and value is the BlobSHA1code.*/
+     * Key is the file name and value is the BlobSHA1code.
+     * Only set in commits made before there were trees.*/
     private HashMap blob;
 
+    /**SHA1 code of the root tree of the files of the commit.*/
+    private String treeID;
+
     /**Whether it has two parents.*/
     private boolean hasParent2 = false;
 
     /**SHA 1 code for its second parent.*/
     private String parentID2;
-
-    /**magic number.*/
-    protected Integer a = 1970;
 }
@@ -0,0 +1,429 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The shape of the history, kept apart from the commits themselves so
+ *  that walking it never deserializes a Commit.  The commit-graph file is
+ *  a header followed by one fixed-size record per commit: its SHA1 code,
+ *  the positions of its parents (-1 if none), its generation number (1
+ *  for the initial commit, otherwise one more than its highest parent)
+ *  and its time in seconds.  A record is appended for every new commit,
+ *  and parents always come before their children.
+ *  @author Claire Ding
+ */
+public class CommitGraph implements Serializable {
+
+    /** Magic number at the start of the file. */
+    static final int MAGIC = 0x47475246;
+    /** Version of the file format. */
+    static final int VERSION = 1;
+    /** Bytes in the header. */
+    static final int HEADER = 8;
+    /** Bytes in one record. */
+    static final int RECORD = PackFile.SHA_BYTES + 4 + 4 + 4 + 8;
+    /** Position standing for "no parent". */
+    static final int NONE = -1;
+
+    /** The commit-graph file. */
+    private File file;
+    /** Where commits missing from the graph are read from. */
+    private ObjectStore commits;
+
+    /** SHA1 code of each position. */
+    private transient List<String> ids;
+    /** Position of each SHA1 code. */
+    private transient HashMap<String, Integer> positions;
+    /** First parent of each position. */
+    private transient int[] parent1;
+    /** Second parent of each position. */
+    private transient int[] parent2;
+    /** Generation number of each position. */
+    private transient int[] generation;
+    /** Commit time of each position. */
+    private transient long[] time;
+    /** Length of the file as last read or written. */
+    private transient long length;
+
+    /** The graph kept in FILE, of the commits in COMMITS.
+     *  @param file is the commit-graph file.
+     *  @param commits is the commit store. */
+    public CommitGraph(File file, ObjectStore commits) {
+        this.file = file;
+        this.commits = commits;
+    }
+
+    /** Forget the graph if the file changed since it was read, as it
+     *  does when another process makes a commit. */
+    public void refresh() {
+        if (ids != null && file.length() != length) {
+            ids = null;
+        }
+    }
+
+    /** Return the number of commits in the graph. */
+    public int size() {
+        load();
+        return ids.size();
+    }
+
+    /** Return the position of the commit ID, adding it and any of its
+     *  ancestors that are missing (from a repository made before there
+     *  was a commit-graph).
+     *  @param id is the SHA1 code of a commit. */
+    public int position(String id) {
+        load();
+        Integer pos = positions.get(id);
+        if (pos == null) {
+            backfill(id);
+            pos = positions.get(id);
+        }
+        return pos;
+    }
+
+    /** Return whether the commit ID is in the graph.
+     *  @param id is the SHA1 code of a commit. */
+    public boolean contains(String id) {
+        load();
+        return positions.containsKey(id);
+    }
+
+    /** Return the SHA1 code of the commit at POS.
+     *  @param pos is a position. */
+    public String idAt(int pos) {
+        load();
+        return ids.get(pos);
+    }
+
+    /** Return the position of the first parent of POS, or NONE.
+     *  @param pos is a position. */
+    public int parent1(int pos) {
+        load();
+        return parent1[pos];
+    }
+
+    /** Return the position of the second parent of POS, or NONE.
+     *  @param pos is a position. */
+    public int parent2(int pos) {
+        load();
+        return parent2[pos];
+    }
+
+    /** Return the generation number of POS.
+     *  @param pos is a position. */
+    public int generation(int pos) {
+        load();
+        return generation[pos];
+    }
+
+    /** Return the commit time of POS in seconds.
+     *  @param pos is a position. */
+    public long time(int pos) {
+        load();
+        return time[pos];
+    }
+
+    /** Return the position of the best common ancestor of A and B: of
+     *  all the commits that are ancestors of both and not ancestors of
+     *  another such commit, the one with the highest generation number,
+     *  then the latest time.  The walk goes from both heads down in order
+     *  of generation number, painting each commit with the heads it is
+     *  reachable from, and stops once every commit still queued is below
+     *  a common ancestor, so it only visits the commits between the heads
+     *  and their merge base.
+     *  @param a is the position of one commit.
+     *  @param b is the position of another. */
+    public int mergeBase(int a, int b) {
+        load();
+        if (a == b) {
+            return a;
+        }
+        List<Integer> found = paint(a, b);
+        for (int i = 0; i < found.size(); i += 1) {
+            for (int j = 0; j < found.size(); j += 1) {
+                if (i != j && found.get(i) != NONE && found.get(j) != NONE
+                        && isAncestor(found.get(i), found.get(j))) {
+                    found.set(i, NONE);
+                    break;
+                }
+            }
+        }
+        int best = NONE;
+        for (int c : found) {
+            if (c != NONE && (best == NONE
+                    || generation[c] > generation[best]
+                    || (generation[c] == generation[best]
+                        && time[c] > time[best]))) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /** Return whether A is an ancestor of B (or B itself), walking down
+     *  from B no further than A's generation.
+     *  @param a is the position of the possible ancestor.
+     *  @param b is the position of the descendant. */
+    public boolean isAncestor(int a, int b) {
+        load();
+        HashMap<Integer, Boolean> seen = new HashMap<>();
+        ArrayDeque<Integer> todo = new ArrayDeque<>();
+        todo.push(b);
+        while (!todo.isEmpty()) {
+            int p = todo.pop();
+            if (p == a) {
+                return true;
+            }
+            if (p == NONE || generation[p] <= generation[a]
+                    || seen.put(p, true) != null) {
+                continue;
+            }
+            todo.push(parent1[p]);
+            todo.push(parent2[p]);
+        }
+        return false;
+    }
+
+    /** Colour for commits reachable from the first head. */
+    private static final int FROM_A = 1;
+    /** Colour for commits reachable from the second head. */
+    private static final int FROM_B = 2;
+    /** Mark of commits below a common ancestor already found. */
+    private static final int STALE = 4;
+
+    /** Return the common ancestors of A and B that are not below another
+     *  common ancestor found by the walk.
+     *  @param a is the position of one commit.
+     *  @param b is the position of another. */
+    private List<Integer> paint(int a, int b) {
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<int[]> queue = new PriorityQueue<>((x, y) ->
+                generation[y[0]] != generation[x[0]]
+                ? Integer.compare(generation[y[0]], generation[x[0]])
+                : Long.compare(time[y[0]], time[x[0]]));
+        flags.put(a, FROM_A);
+        flags.put(b, FROM_B);
+        queue.add(new int[] {a, 1});
+        queue.add(new int[] {b, 1});
+        int live = 2;
+        List<Integer> result = new ArrayList<>();
+        while (live > 0) {
+            int[] top = queue.poll();
+            live -= top[1];
+            int p = top[0];
+            int f = flags.get(p);
+            if ((f & (FROM_A | FROM_B)) == (FROM_A | FROM_B)
+                    && (f & STALE) == 0) {
+                result.add(p);
+                f |= STALE;
+                flags.put(p, f);
+            }
+            for (int q : new int[] {parent1[p], parent2[p]}) {
+                if (q == NONE) {
+                    continue;
+                }
+                int old = flags.getOrDefault(q, 0);
+                if ((old | f) != old) {
+                    flags.put(q, old | f);
+                    int fresh = (f & STALE) == 0 ? 1 : 0;
+                    queue.add(new int[] {q, fresh});
+                    live += fresh;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Add COMMIT to the graph and to the end of the file, if it is not
+     *  there yet.  Its parents must already be in the graph.
+     *  @param commit is the new commit. */
+    public void add(Commit commit) {
+        load();
+        if (positions.containsKey(commit.getShaID())) {
+            return;
+        }
+        int p1 = commit.getParentID() == null ? NONE
+                : position(commit.getParentID());
+        int p2 = commit.isHasParent2() ? position(commit.getParentTwoId())
+                : NONE;
+        int gen = 1 + Math.max(p1 == NONE ? 0 : generation[p1],
+                p2 == NONE ? 0 : generation[p2]);
+        long t = commit.getTime();
+        append(commit.getShaID(), p1, p2, gen, t);
+        boolean fresh = !file.exists() || file.length() < HEADER;
+        Trace.countWrite();
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(file, true))) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            out.write(PackFile.unhex(commit.getShaID()));
+            out.writeInt(p1);
+            out.writeInt(p2);
+            out.writeInt(gen);
+            out.writeLong(t);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        length = file.length();
+    }
+
+    /** Write the file again with only the commits at the positions in
+     *  KEEP, which must hold the parents of every position it holds, to
+     *  a temporary file renamed over it.  Used when commits are removed.
+     *  A kept commit missing from the new file, because another process
+     *  added it meanwhile, is added again the next time it is needed.
+     *  @param keep are the positions of the commits to keep. */
+    public void retain(BitSet keep) {
+        load();
+        int[] moved = new int[ids.size()];
+        Arrays.fill(moved, NONE);
+        File tmp = new File(file.getPath() + ".tmp");
+        Trace.countWrite();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp),
+                        Utils.CHUNK_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            int n = 0;
+            for (int p = keep.nextSetBit(0); p >= 0 && p < ids.size();
+                 p = keep.nextSetBit(p + 1)) {
+                moved[p] = n;
+                n += 1;
+                out.write(PackFile.unhex(ids.get(p)));
+                out.writeInt(parent1[p] == NONE ? NONE : moved[parent1[p]]);
+                out.writeInt(parent2[p] == NONE ? NONE : moved[parent2[p]]);
+                out.writeInt(generation[p]);
+                out.writeLong(time[p]);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ids = null;
+    }
+
+    /** Add the commit ID and every missing ancestor of it, parents
+     *  first, reading them from the commit store.
+     *  @param id is the SHA1 code of a commit. */
+    private void backfill(String id) {
+        ArrayDeque<Commit> stack = new ArrayDeque<>();
+        stack.push(Commit.read(commits, id));
+        while (!stack.isEmpty()) {
+            Commit top = stack.peek();
+            String missing = null;
+            if (top.getParentID() != null
+                    && !positions.containsKey(top.getParentID())) {
+                missing = top.getParentID();
+            } else if (top.isHasParent2()
+                    && !positions.containsKey(top.getParentTwoId())) {
+                missing = top.getParentTwoId();
+            }
+            if (missing == null) {
+                add(stack.pop());
+            } else {
+                stack.push(Commit.read(commits, missing));
+            }
+        }
+    }
+
+    /** Read the file, the first time the graph is used.  A record cut
+     *  short by a crash is dropped, and the file truncated to the last
+     *  whole record. */
+    private void load() {
+        if (ids != null) {
+            return;
+        }
+        ids = new ArrayList<>();
+        positions = new HashMap<>();
+        parent1 = new int[16];
+        parent2 = new int[16];
+        generation = new int[16];
+        time = new long[16];
+        length = file.length();
+        if (!file.exists() || file.length() < HEADER) {
+            truncate(0);
+            return;
+        }
+        long count = (length - HEADER) / RECORD;
+        truncate(HEADER + count * RECORD);
+        Trace.countRead();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file),
+                        Utils.CHUNK_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("bad commit-graph");
+            }
+            byte[] sha = new byte[PackFile.SHA_BYTES];
+            for (long i = 0; i < count; i += 1) {
+                in.readFully(sha);
+                append(Utils.toHex(sha), in.readInt(), in.readInt(),
+                        in.readInt(), in.readLong());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Cut the file back to its first SIZE bytes, if it is longer, so
+     *  that records appended later start where a whole record ended.
+     *  @param size is the length of the whole records, with the header. */
+    private void truncate(long size) {
+        if (length <= size) {
+            return;
+        }
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.setLength(size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        length = size;
+    }
+
+    /** Add a record to the graph in memory.
+     *  @param id is the SHA1 code.
+     *  @param p1 is the first parent.
+     *  @param p2 is the second parent.
+     *  @param gen is the generation number.
+     *  @param t is the commit time. */
+    private void append(String id, int p1, int p2, int gen, long t) {
+        int pos = ids.size();
+        if (pos == parent1.length) {
+            int n = pos * 2;
+            parent1 = Arrays.copyOf(parent1, n);
+            parent2 = Arrays.copyOf(parent2, n);
+            generation = Arrays.copyOf(generation, n);
+            time = Arrays.copyOf(time, n);
+        }
+        ids.add(id);
+        positions.put(id, pos);
+        parent1[pos] = p1;
+        parent2[pos] = p2;
+        generation[pos] = gen;
+        time[pos] = t;
+    }
+}
@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/** A process that keeps one Repo warm, with its caches and indexes
+ *  loaded, and runs the commands of clients on it, so that they do not
+ *  each pay for starting a JVM and reading the repository cold.  It
+ *  listens on the Unix domain socket SOCKET in the .gitlet folder of the
+ *  directory it was started in.  A client sends the number of arguments
+ *  and each argument; the daemon runs them as Main would and replies
+ *  with the exit code, then the length and bytes of what the command
+ *  wrote to standard output, then the same for standard error.
+ *  Commands are run one at a time.
+ *  @author Claire Ding
+ */
+public class Daemon {
+
+    /** The socket of the daemon serving the current directory. */
+    static final File SOCKET = new File(".gitlet/daemon.sock");
+
+    /** Run the command ARGS in the daemon serving the current directory,
+     *  copy its output here and return its exit code, or return -1 if no
+     *  daemon is running.  A socket left by a daemon that died is
+     *  removed.
+     *  @param args is the command and its operands. */
+    static int forward(String... args) {
+        if (!SOCKET.exists()) {
+            return -1;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            SOCKET.delete();
+            return -1;
+        }
+        try (SocketChannel ch = channel) {
+            DataOutputStream out = new DataOutputStream(
+                    Channels.newOutputStream(ch));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                    Channels.newInputStream(ch));
+            int code = in.readInt();
+            System.out.write(in.readNBytes(in.readInt()));
+            System.out.flush();
+            System.err.write(in.readNBytes(in.readInt()));
+            System.err.flush();
+            return code;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Serve commands on SOCKET with RP until a client sends daemon
+     *  stop.  Before each command RP is refreshed, since other processes
+     *  may have changed the repository.
+     *  @param rp is the repository. */
+    static void serve(Repo rp) throws IOException {
+        if (SOCKET.exists() && forward("daemon", "ping") >= 0) {
+            Utils.message("A daemon is already running.");
+            return;
+        }
+        Files.deleteIfExists(SOCKET.toPath());
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            boolean running = true;
+            while (running) {
+                try (SocketChannel ch = server.accept()) {
+                    DataInputStream in = new DataInputStream(
+                            Channels.newInputStream(ch));
+                    String[] args = new String[in.readInt()];
+                    for (int i = 0; i < args.length; i += 1) {
+                        args[i] = in.readUTF();
+                    }
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    ByteArrayOutputStream err = new ByteArrayOutputStream();
+                    int code = 0;
+                    System.setOut(new PrintStream(out, true));
+                    System.setErr(new PrintStream(err, true));
+                    try {
+                        if (args.length > 0 && args[0].equals("daemon")) {
+                            running = !Arrays.asList(args).contains("stop");
+                        } else {
+                            rp.refresh();
+                            Main.run(rp, args);
+                        }
+                    } catch (IOException | RuntimeException | Error excp) {
+                        uncaught(excp);
+                        code = 1;
+                    } finally {
+                        System.out.flush();
+                        System.err.flush();
+                        System.setOut(stdout);
+                        System.setErr(stderr);
+                    }
+                    DataOutputStream reply = new DataOutputStream(
+                            Channels.newOutputStream(ch));
+                    reply.writeInt(code);
+                    reply.writeInt(out.size());
+                    out.writeTo(reply);
+                    reply.writeInt(err.size());
+                    err.writeTo(reply);
+                    reply.flush();
+                } catch (IOException excp) {
+                    stderr.println("gitlet daemon: " + excp.getMessage());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(SOCKET.toPath());
+        }
+    }
+
+    /** Print EXCP to standard error as the JVM prints an exception that
+     *  escapes main.  The frames of the daemon itself, between the
+     *  Main.run of the command and the Main.run of the daemon, are left
+     *  out, so the trace is the one a direct run prints.
+     *  @param excp is what the command threw. */
+    private static void uncaught(Throwable excp) {
+        StackTraceElement[] trace = excp.getStackTrace();
+        StackTraceElement[] here = new Throwable().getStackTrace();
+        for (int i = 0; i < trace.length; i += 1) {
+            if (trace[i].getClassName().equals(Main.class.getName())
+                    && trace[i].getMethodName().equals("run")) {
+                trace = Arrays.copyOf(trace, i + 2);
+                trace[i + 1] = here[here.length - 1];
+                excp.setStackTrace(trace);
+                break;
+            }
+        }
+        System.err.print("Exception in thread \"main\" ");
+        excp.printStackTrace();
+    }
+}
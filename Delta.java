@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Binary deltas between two versions of a file.  A delta is the length
+ *  of the new version followed by a list of instructions, each either
+ *  COPY (take a run of bytes from the old version) or INSERT (take the
+ *  bytes that follow the instruction).  Runs are found by indexing the
+ *  old version in BLOCK-byte blocks and looking up a rolling hash of
+ *  every BLOCK-byte window of the new version.
+ *  @author Claire Ding
+ */
+class Delta {
+
+    /** Size of the blocks the old version is indexed by. */
+    static final int BLOCK = 16;
+    /** Instruction code for a copy from the old version. */
+    private static final int COPY = 1;
+    /** Instruction code for literal bytes. */
+    private static final int INSERT = 2;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** Return the delta that turns BASE into TARGET.
+     *  @param base is the old version.
+     *  @param target is the new version. */
+    static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int power = 1;
+        for (int k = 1; k < BLOCK; k += 1) {
+            power *= PRIME;
+        }
+        int literal = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            Integer at = blocks.get(h);
+            if (at != null && same(base, at, target, i, BLOCK)) {
+                int start = at;
+                int back = 0;
+                while (i - back > literal && start - back > 0
+                        && base[start - back - 1] == target[i - back - 1]) {
+                    back += 1;
+                }
+                int len = BLOCK + back;
+                start -= back;
+                int from = i - back;
+                while (from + len < target.length && start + len < base.length
+                        && base[start + len] == target[from + len]) {
+                    len += 1;
+                }
+                writeInsert(out, target, literal, from);
+                out.write(COPY);
+                writeVarint(out, start);
+                writeVarint(out, len);
+                i = from + len;
+                literal = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK < target.length) {
+                h = (h - target[i] * power) * PRIME + target[i + BLOCK];
+            }
+            i += 1;
+        }
+        writeInsert(out, target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE.
+     *  @param base is the old version.
+     *  @param delta is a delta made by encode. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        int size = (int) readVarint(delta, pos);
+        byte[] result = new byte[size];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++];
+            if (op == COPY) {
+                int start = (int) readVarint(delta, pos);
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(base, start, result, n, len);
+                n += len;
+            } else if (op == INSERT) {
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, n, len);
+                pos[0] += len;
+                n += len;
+            } else {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+        }
+        if (n != size) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Write an INSERT of TARGET[FROM..TO) to OUT, if it is not empty.
+     *  @param out is the delta being built.
+     *  @param target is the new version.
+     *  @param from is the first byte.
+     *  @param to is just past the last byte. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target,
+                                    int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Return the hash of the BLOCK bytes of DATA starting at AT.
+     *  @param data is the bytes.
+     *  @param at is the start. */
+    private static int hash(byte[] data, int at) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + data[at + k];
+        }
+        return h;
+    }
+
+    /** Return whether the LEN bytes at A[I] and B[J] are equal.
+     *  @param a is one array.
+     *  @param i is where to start in A.
+     *  @param b is another array.
+     *  @param j is where to start in B.
+     *  @param len is how many bytes. */
+    private static boolean same(byte[] a, int i, byte[] b, int j, int len) {
+        for (int k = 0; k < len; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write V to OUT seven bits at a time, low bits first.
+     *  @param out is the stream.
+     *  @param v is a non-negative number. */
+    static void writeVarint(ByteArrayOutputStream out, long v) {
+        while (v >= 0x80) {
+            out.write((int) (v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    /** Return the number written by writeVarint at DATA[POS[0]], and
+     *  move POS[0] past it.
+     *  @param data is the bytes.
+     *  @param pos holds the position. */
+    static long readVarint(byte[] data, int[] pos) {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]++] & 0xff;
+            v |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return v;
+            }
+            shift += 7;
+        }
+    }
+}
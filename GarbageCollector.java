@@ -0,0 +1,236 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Finds the objects that can no longer be reached and removes them.
+ *  The mark starts from the commits that the branches and HEAD point to
+ *  and from the blobs on the stage.  It walks the commit-graph to every
+ *  ancestor of those commits, then reads the reached commits in parallel
+ *  and walks their trees on the fork-join pool.  A tree shared by many
+ *  commits is walked once.  The blobs of the trees, the bases of the
+ *  blobs stored as deltas and the chunks of the blobs stored as
+ *  manifests are marked too.
+ *
+ *  Reached commits are kept as a BitSet over positions in the graph and
+ *  reached trees in an exact set, since the walk must never skip one.
+ *  Blobs and chunks, of which there are the most, are only marked in a
+ *  Bloom filter with BITS bits for each stored blob, so a few dead blobs
+ *  may be kept, never a live one.  The sweep then reads each store one
+ *  object at a time, so no list of every object is ever held.
+ *
+ *  Nothing written less than GRACE milliseconds before the mark began is
+ *  removed.  Another process may have stored it for a stage or a branch
+ *  it has not written yet.  So such objects are marked as well, and
+ *  everything they need: the ancestors and trees of a commit, the
+ *  contents of a tree, the base of a delta and the chunks of a manifest.
+ *  @author Claire Ding
+ */
+public class GarbageCollector {
+
+    /** Milliseconds an object is kept after it was written, whether
+     *  reached or not, set in seconds with -Dgitlet.grace. */
+    static final long GRACE = Long.getLong("gitlet.grace", 300) * 1000;
+    /** Bits of the Bloom filter for each stored blob, for about one
+     *  false positive in a hundred. */
+    static final int BITS = 10;
+    /** Blob codes looked at together when following links. */
+    static final int BATCH = 4096;
+
+    /** All the blobs and chunks. */
+    private ObjectStore blobs;
+    /** All the directory trees. */
+    private ObjectStore treeStore;
+    /** All the commits. */
+    private ObjectStore commits;
+    /** Parents of the commits. */
+    private CommitGraph graph;
+    /** Positions in GRAPH of the commits reached. */
+    private BitSet reached;
+    /** SHA1 codes of the trees reached. */
+    private Set<String> liveTrees = ConcurrentHashMap.newKeySet();
+    /** SHA1 codes of the blobs reached, and maybe a few others. */
+    private Bloom liveBlobs;
+    /** Objects written before this time, in milliseconds, may be
+     *  removed. */
+    private long cutoff;
+
+    /** A collector of the objects of BLOBS, TREES and COMMITS, whose
+     *  history is GRAPH.
+     *  @param blobs is the blob store.
+     *  @param trees is the tree store.
+     *  @param commits is the commit store.
+     *  @param graph is the commit-graph. */
+    GarbageCollector(ObjectStore blobs, ObjectStore trees,
+                     ObjectStore commits, CommitGraph graph) {
+        this.blobs = blobs;
+        this.treeStore = trees;
+        this.commits = commits;
+        this.graph = graph;
+    }
+
+    /** Mark everything reachable from the commits ROOTS, the blobs
+     *  STAGED and the objects written in the grace period.
+     *  @param roots are the SHA1 codes of the commits of every branch.
+     *  @param staged are the codes of the blobs on the stage. */
+    void mark(Collection<String> roots, Collection<String> staged) {
+        cutoff = System.currentTimeMillis() - GRACE;
+        ArrayDeque<Integer> todo = new ArrayDeque<>();
+        for (String id : roots) {
+            todo.push(graph.position(id));
+        }
+        commits.forEachSince(cutoff, id -> todo.push(graph.position(id)));
+        reached = new BitSet(graph.size());
+        while (!todo.isEmpty()) {
+            int pos = todo.pop();
+            if (pos == CommitGraph.NONE || reached.get(pos)) {
+                continue;
+            }
+            reached.set(pos);
+            todo.push(graph.parent1(pos));
+            todo.push(graph.parent2(pos));
+        }
+        liveBlobs = new Bloom(blobs.count());
+        staged.forEach(liveBlobs::add);
+        blobs.forEachSince(cutoff, liveBlobs::add);
+        treeStore.forEachSince(cutoff, this::markTree);
+        reached.stream().parallel().forEach(pos -> {
+            Commit com = Commit.read(commits, graph.idAt(pos));
+            if (com.getTreeID() != null) {
+                markTree(com.getTreeID());
+            } else if (com.getBlob() != null) {
+                com.getBlob().values().forEach(liveBlobs::add);
+            }
+        });
+        List<String> batch = new ArrayList<>(BATCH);
+        blobs.forEach(id -> {
+            batch.add(id);
+            if (batch.size() == BATCH) {
+                markLinks(batch);
+                batch.clear();
+            }
+        });
+        markLinks(batch);
+    }
+
+    /** Mark the tree ID, if it was not marked yet, and everything in it.
+     *  @param id is the SHA1 code of a tree. */
+    private void markTree(String id) {
+        if (!liveTrees.add(id)) {
+            return;
+        }
+        List<String> subtrees = new ArrayList<>();
+        for (Map.Entry<String, String> e
+                : TreeStore.decode(treeStore.read(id)).entrySet()) {
+            if (e.getKey().endsWith(TreeStore.SEP)) {
+                subtrees.add(e.getValue());
+            } else {
+                liveBlobs.add(e.getValue());
+            }
+        }
+        subtrees.parallelStream().forEach(this::markTree);
+    }
+
+    /** Mark the objects that the marked blobs among IDS need, in
+     *  parallel.
+     *  @param ids are SHA1 codes of stored blobs. */
+    private void markLinks(List<String> ids) {
+        ids.parallelStream().filter(liveBlobs::contains)
+                .forEach(this::markLinks);
+    }
+
+    /** Mark the objects that the blob ID needs, and what they need.
+     *  @param id is the SHA1 code of a stored blob. */
+    private void markLinks(String id) {
+        for (String link : blobs.links(id)) {
+            liveBlobs.add(link);
+            markLinks(link);
+        }
+    }
+
+    /** Remove every object that was not marked and is older than the
+     *  grace period, and the records of removed commits from the
+     *  commit-graph.  Returns the numbers of blobs, trees and commits
+     *  removed and the bytes freed. */
+    long[] sweep() {
+        long[] b = blobs.sweep(liveBlobs::contains, cutoff);
+        long[] t = treeStore.sweep(liveTrees::contains, cutoff);
+        long[] c = commits.sweep(id -> graph.contains(id)
+                && reached.get(graph.position(id)), cutoff);
+        if (c[0] > 0) {
+            graph.retain(reached);
+        }
+        return new long[] {b[0], t[0], c[0], b[1] + t[1] + c[1]};
+    }
+
+    /** A set of SHA1 codes that may say yes for a code never added, but
+     *  never says no for one that was.  Codes are already uniformly
+     *  random, so the bits to set come from the code itself, mixed with
+     *  a different salt in every run so that the same dead blob is not
+     *  kept by every gc.  May be used from several threads at once. */
+    static class Bloom {
+        /** Bits set for each code. */
+        static final int HASHES = 7;
+
+        /** The bits. */
+        private AtomicLongArray bits;
+        /** Number of bits. */
+        private long size;
+        /** Mixed into the first hash. */
+        private long salt = System.nanoTime() * 0x9E3779B97F4A7C15L;
+
+        /** A filter for about EXPECTED codes.
+         *  @param expected is how many codes will be added at most. */
+        Bloom(long expected) {
+            size = Math.max(Long.SIZE, expected * BITS);
+            bits = new AtomicLongArray((int) ((size + Long.SIZE - 1)
+                    / Long.SIZE));
+        }
+
+        /** Add ID.
+         *  @param id is a SHA1 code. */
+        void add(String id) {
+            long h1 = first(id);
+            long h2 = second(id);
+            for (int i = 0; i < HASHES; i += 1) {
+                long bit = Math.floorMod(h1 + i * h2, size);
+                long mask = 1L << bit;
+                bits.getAndAccumulate((int) (bit / Long.SIZE), mask,
+                        (a, m) -> a | m);
+            }
+        }
+
+        /** Return whether ID may have been added.
+         *  @param id is a SHA1 code. */
+        boolean contains(String id) {
+            long h1 = first(id);
+            long h2 = second(id);
+            for (int i = 0; i < HASHES; i += 1) {
+                long bit = Math.floorMod(h1 + i * h2, size);
+                if ((bits.get((int) (bit / Long.SIZE)) & 1L << bit) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Return the first hash of ID.
+         *  @param id is a SHA1 code. */
+        private long first(String id) {
+            return Long.parseUnsignedLong(id.substring(0, 16), 16) ^ salt;
+        }
+
+        /** Return the second hash of ID, which is odd.
+         *  @param id is a SHA1 code. */
+        private static long second(String id) {
+            return Long.parseUnsignedLong(id.substring(16, 32), 16) | 1;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/** A sorted index of the SHA1 codes of the objects of one ObjectStore,
+ *  so that an abbreviated code is found by binary search rather than by
+ *  listing the store.  The file is a header, COUNT raw codes in sorted
+ *  order, then the codes added since, unsorted, one after another.  Once
+ *  more than TAIL codes have been added the file is written again, all
+ *  sorted, to a temporary file renamed over it.  A code cut short by a
+ *  crash is dropped.  A store made before there was an index gets one
+ *  from a listing of the store the first time it is needed.
+ *  @author Claire Ding
+ */
+public class IdIndex {
+
+    /** Magic number at the start of the file. */
+    static final int MAGIC = 0x47494453;
+    /** Version of the file format. */
+    static final int VERSION = 1;
+    /** Bytes in the header: magic, version and number of sorted codes. */
+    static final int HEADER = 12;
+    /** Most codes kept unsorted after the sorted ones. */
+    static final int TAIL = 1024;
+
+    /** The index file. */
+    private File file;
+    /** The store whose codes are indexed. */
+    private ObjectStore store;
+
+    /** The index kept in FILE of the objects of STORE.
+     *  @param file is the index file.
+     *  @param store is the object store. */
+    public IdIndex(File file, ObjectStore store) {
+        this.file = file;
+        this.store = store;
+    }
+
+    /** Add ID, which has just been stored, to the index.
+     *  @param id is a SHA1 code. */
+    public void add(String id) {
+        if (!file.exists()) {
+            build();
+            return;
+        }
+        Trace.countWrite();
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.seek(HEADER - 4);
+            int sorted = f.readInt();
+            long whole = HEADER + (f.length() - HEADER) / PackFile.SHA_BYTES
+                    * PackFile.SHA_BYTES;
+            f.setLength(whole);
+            long tail = (whole - HEADER) / PackFile.SHA_BYTES - sorted;
+            if (tail < TAIL) {
+                f.seek(whole);
+                f.write(PackFile.unhex(id));
+                return;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        TreeSet<String> all = new TreeSet<>(ids());
+        all.add(id);
+        write(all);
+    }
+
+    /** Return the SHA1 codes that start with PREFIX, at most LIMIT of
+     *  them, sorted.  The sorted codes are searched by binary search for
+     *  the first code not less than PREFIX, and the unsorted ones one by
+     *  one, so a caller can tell a unique abbreviation from an ambiguous
+     *  one with LIMIT 2.
+     *  @param prefix is the start of a SHA1 code.
+     *  @param limit is the most codes wanted. */
+    public List<String> resolve(String prefix, int limit) {
+        TreeSet<String> result = new TreeSet<>();
+        if (!prefix.matches("[0-9a-f]+")
+                || prefix.length() > Utils.UID_LENGTH) {
+            return new ArrayList<>(result);
+        }
+        if (!file.exists()) {
+            build();
+        }
+        MappedByteBuffer index = map();
+        int sorted = index.getInt(HEADER - 4);
+        int n = (index.capacity() - HEADER) / PackFile.SHA_BYTES;
+        int lo = 0;
+        int hi = sorted;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (idAt(index, mid).compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < sorted && result.size() < limit; i += 1) {
+            String id = idAt(index, i);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+        for (int i = sorted; i < n && result.size() < limit; i += 1) {
+            String id = idAt(index, i);
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Make the index again from a listing of the store. */
+    public void build() {
+        write(store.list());
+    }
+
+    /** Delete the index, so that it is made again from the objects there
+     *  are then the next time it is used.  Used when objects are
+     *  removed. */
+    public void clear() {
+        file.delete();
+    }
+
+    /** Return every code in the index, sorted or not. */
+    private List<String> ids() {
+        MappedByteBuffer index = map();
+        int n = (index.capacity() - HEADER) / PackFile.SHA_BYTES;
+        List<String> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i += 1) {
+            result.add(idAt(index, i));
+        }
+        return result;
+    }
+
+    /** Write IDS, which are sorted, as the whole index.
+     *  @param ids are SHA1 codes in lexicographic order. */
+    private void write(Collection<String> ids) {
+        File tmp = new File(file.getPath() + ".tmp");
+        Trace.countWrite();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp),
+                        Utils.CHUNK_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            for (String id : ids) {
+                out.write(PackFile.unhex(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the index file, mapped. */
+    private MappedByteBuffer map() {
+        Trace.countRead();
+        MappedByteBuffer result;
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            result = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (result.capacity() < HEADER || result.getInt(0) != MAGIC
+                || result.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("bad id index " + file);
+        }
+        return result;
+    }
+
+    /** Return the I-th code of INDEX.
+     *  @param index is the mapped file.
+     *  @param i is the position of the code. */
+    private static String idAt(MappedByteBuffer index, int i) {
+        byte[] sha = new byte[PackFile.SHA_BYTES];
+        index.get(HEADER + i * PackFile.SHA_BYTES, sha);
+        return Utils.toHex(sha);
+    }
+}
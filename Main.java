@@ -1,6 +1,9 @@
 package gitlet;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -10,18 +13,55 @@ import java.util.Arrays;
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> .... If a daemon is serving this directory
+     *  the command is run by it, otherwise here. */
     public static void main(String... args) throws IOException {
+        int code = args.length > 0 && (args[0].equals("daemon")
+                || args[0].equals("batch")) ? -1 : Daemon.forward(args);
+        if (code < 0) {
+            run(new Repo(), args);
+        } else if (code != 0) {
+            System.exit(code);
+        }
+    }
+
+    /** Run the command ARGS on the repository RP, then write back what
+     * it changed.
+     * @param rp is the repository.
+     * @param args is the command and its operands. */
+    static void run(Repo rp, String... args) throws IOException {
+        Trace.command(args);
+        try {
+            if (!dispatch(rp, args)) {
+                return;
+            }
+            Trace.phase("flush");
+            rp.flush();
+            if (System.getProperty("gitlet.iostats") != null) {
+                System.err.printf("files read: %d, files written: %d, "
+                        + "cache hits: %d, cache misses: %d%n",
+                        Trace.filesRead(), Trace.filesWritten(),
+                        rp.cacheHits(), rp.cacheMisses());
+            }
+        } finally {
+            Trace.finish();
+        }
+    }
+
+    /** Run the command ARGS on the repository RP, without writing back
+     * what it changed.  Return false if there was no command to run.
+     * @param rp is the repository.
+     * @param args is the command and its operands. */
+    static boolean dispatch(Repo rp, String... args) throws IOException {
         if (args.length == 0) {
             Utils.message("Please enter a command.");
-            return;
+            return false;
         }
         if ((!new File(".gitlet").exists())
                 && (!args[0].equals("init"))) {
             Utils.message("Not in an initialized Gitlet directory.");
-            return;
+            return false;
         }
-        Repo rp = new Repo();
         ArrayList<String> first =
                 new ArrayList<>(Arrays.asList("init", "add",
                         "commit", "rm", "log"));
@@ -33,7 +73,8 @@ public class Main {
                         "reset", "merge"));
         ArrayList<String> fourth =
                 new ArrayList<>(Arrays.asList("add-remote", "rm-remote",
-                        "push", "fetch", "pull"));
+                        "push", "fetch", "pull", "repack", "migrate",
+                        "gc", "daemon", "batch"));
         if (first.contains(args[0])) {
             firstFunc(rp, args);
         } else if (second.contains(args[0])) {
@@ -44,9 +85,9 @@ public class Main {
             fourthFunc(rp, args);
         } else {
             Utils.message("No command with that name exists.");
-            return;
+            return false;
         }
-        Utils.writeObject(new File(".gitlet", "gitlet"), rp);
+        return true;
     }
     /**first group.
      * @param rp is param
@@ -60,8 +101,10 @@ public class Main {
             break;
         }
         case "add": {
-            if (checker(args, 2)) {
-                rp.add(args[1]);
+            if (args.length < 2) {
+                Utils.message("Incorrect operands.");
+            } else {
+                rp.add(Arrays.copyOfRange(args, 1, args.length));
             }
             break;
         }
@@ -93,13 +136,17 @@ public class Main {
     static void secondFunc(Repo rp, String... args) throws IOException {
         switch (args[0]) {
         case "global-log": {
-            if (checker(args, 1)) {
+            if (args.length == 2) {
+                rp.globalLog(args[1]);
+            } else if (checker(args, 1)) {
                 rp.globalLog();
             }
             break;
         }
         case "find": {
-            if (checker(args, 2)) {
+            if (args.length == 3) {
+                rp.find(args[1], args[2]);
+            } else if (checker(args, 2)) {
                 rp.find(args[1]);
             }
             break;
@@ -197,6 +244,50 @@ public class Main {
             }
             break;
         }
+        case "repack": {
+            if (checker(args, 1)) {
+                rp.repack();
+            }
+            break;
+        }
+        case "migrate": {
+            if (checker(args, 1)) {
+                rp.migrate();
+            }
+            break;
+        }
+        case "gc": {
+            if (checker(args, 1)) {
+                rp.gc();
+            }
+            break;
+        }
+        case "batch": {
+            if (args.length == 1) {
+                Batch.run(rp, new InputStreamReader(System.in,
+                        StandardCharsets.UTF_8));
+            } else if (checker(args, 2)) {
+                File script = new File(args[1]);
+                if (!script.isFile()) {
+                    Utils.message("File does not exist.");
+                    break;
+                }
+                Batch.run(rp, new FileReader(script, StandardCharsets.UTF_8));
+            }
+            break;
+        }
+        case "daemon": {
+            if (args.length == 1) {
+                Daemon.serve(rp);
+            } else if (args.length == 2 && args[1].equals("stop")) {
+                if (Daemon.forward(args) < 0) {
+                    Utils.message("No daemon is running.");
+                }
+            } else {
+                Utils.message("Incorrect operands.");
+            }
+            break;
+        }
         default:
             break;
         }
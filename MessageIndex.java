@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** An inverted index of commit messages, so that find reads only the
+ *  commits it reports.  Under its folder, messages/H lists the SHA1
+ *  codes of the commits whose message has SHA1 code H, tokens/H lists
+ *  the commits whose message contains the token with SHA1 code H, and
+ *  prefixes/P lists the distinct tokens starting with the two characters
+ *  whose hexadecimal code is P.  All of them are appended to, one line
+ *  per entry, as commits are made.
+ *  @author Claire Ding
+ */
+public class MessageIndex implements Serializable {
+
+    /** Number of characters a token is filed under for prefix search. */
+    static final int PREFIX = 2;
+
+    /** The index folder. */
+    private File folder;
+    /** Where the commits are, to build the index the first time. */
+    private ObjectStore commits;
+
+    /** The index kept in FOLDER, of the commits in COMMITS.
+     *  @param folder is the index folder.
+     *  @param commits is the commit store. */
+    public MessageIndex(File folder, ObjectStore commits) {
+        this.folder = folder;
+        this.commits = commits;
+    }
+
+    /** Add COMMIT to the index.  Must be called once per new commit,
+     *  after it has been stored.
+     *  @param commit is the new commit. */
+    public void add(Commit commit) {
+        if (!folder.exists()) {
+            build();
+        } else {
+            index(commit);
+        }
+    }
+
+    /** Return the SHA1 codes of the commits whose message is exactly
+     *  MESSAGE, sorted.
+     *  @param message is the message. */
+    public List<String> exact(String message) {
+        return sorted(lines(Utils.join(folder, "messages",
+                Utils.sha1(message))));
+    }
+
+    /** Return the SHA1 codes of the commits whose message contains the
+     *  token TOKEN, sorted.  Case does not matter.
+     *  @param token is one word. */
+    public List<String> token(String token) {
+        return sorted(lines(Utils.join(folder, "tokens",
+                Utils.sha1(normal(token)))));
+    }
+
+    /** Return the SHA1 codes of the commits whose message has a token
+     *  starting with PREFIX, sorted.  PREFIX must have at least PREFIX
+     *  characters.
+     *  @param prefix is the start of a word. */
+    public List<String> prefix(String prefix) {
+        String p = normal(prefix);
+        Set<String> result = new TreeSet<>();
+        if (p.length() < PREFIX) {
+            return new ArrayList<>(result);
+        }
+        for (String tok : lines(Utils.join(folder, "prefixes",
+                bucket(p)))) {
+            if (tok.startsWith(p)) {
+                result.addAll(lines(Utils.join(folder, "tokens",
+                        Utils.sha1(tok))));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Make sure the index exists, building it from every commit if the
+     *  repository was made before there was one. */
+    public void build() {
+        if (folder.exists()) {
+            return;
+        }
+        Utils.join(folder, "messages").mkdirs();
+        Utils.join(folder, "tokens").mkdirs();
+        Utils.join(folder, "prefixes").mkdirs();
+        for (String id : commits.list()) {
+            index(Commit.read(commits, id));
+        }
+    }
+
+    /** Delete the index, so that the next find builds it again from the
+     *  commits there are then.  Used when commits are removed. */
+    public void clear() {
+        for (String sub : new String[] {"messages", "tokens", "prefixes"}) {
+            File dir = Utils.join(folder, sub);
+            String[] names = dir.list();
+            for (String name : names == null ? new String[0] : names) {
+                new File(dir, name).delete();
+            }
+            dir.delete();
+        }
+        folder.delete();
+    }
+
+    /** Append COMMIT to the entries of its message and tokens.
+     *  @param commit is a commit. */
+    private void index(Commit commit) {
+        String id = commit.getShaID();
+        String message = commit.getCommitMessage();
+        append(Utils.join(folder, "messages", Utils.sha1(message)), id);
+        for (String tok : tokens(message)) {
+            File posting = Utils.join(folder, "tokens", Utils.sha1(tok));
+            if (tok.length() >= PREFIX && !posting.exists()) {
+                append(Utils.join(folder, "prefixes", bucket(tok)), tok);
+            }
+            append(posting, id);
+        }
+    }
+
+    /** Return the distinct tokens of MESSAGE: its runs of letters and
+     *  digits, in lower case.
+     *  @param message is a commit message. */
+    static Set<String> tokens(String message) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String tok : message.split("[^\\p{L}\\p{N}]+")) {
+            if (!tok.isEmpty()) {
+                result.add(normal(tok));
+            }
+        }
+        return result;
+    }
+
+    /** Return TOKEN as it is kept in the index.
+     *  @param token is a word. */
+    private static String normal(String token) {
+        return token.toLowerCase(Locale.ROOT);
+    }
+
+    /** Return the name of the prefixes file for TOKEN.
+     *  @param token is a token at least PREFIX characters long. */
+    private static String bucket(String token) {
+        return Utils.toHex(token.substring(0, PREFIX)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Add LINE to the end of FILE.
+     *  @param file is an index file.
+     *  @param line is the entry. */
+    private static void append(File file, String line) {
+        Trace.countWrite();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the lines of FILE, none if it does not exist.
+     *  @param file is an index file. */
+    private static List<String> lines(File file) {
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+        String text = Utils.readContentsAsString(file);
+        if (text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(text.split("\n"));
+    }
+
+    /** Return the distinct entries of IDS in lexicographic order.
+     *  @param ids are SHA1 codes. */
+    private static List<String> sorted(List<String> ids) {
+        return new ArrayList<>(new TreeSet<>(ids));
+    }
+}
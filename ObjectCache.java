@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/** A least recently used cache of decoded objects by SHA1 code, bounded
+ *  by an estimate of the memory they take rather than by their number.
+ *  Objects must never be modified once they are in the cache, since
+ *  every caller gets the same one.  It counts its hits and misses.
+ *  @author Claire Ding
+ */
+public class ObjectCache<V> {
+
+    /** Bytes of overhead counted for every entry. */
+    static final long ENTRY = 64;
+
+    /** Most bytes the cache may hold. */
+    private final long limit;
+    /** Estimate of the bytes taken by an object. */
+    private final ToLongFunction<V> weigher;
+    /** Cached objects, least recently used first. */
+    private final LinkedHashMap<String, V> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /** Estimated bytes of each cached object. */
+    private final LinkedHashMap<String, Long> weights = new LinkedHashMap<>();
+    /** Estimated bytes held. */
+    private long bytes;
+    /** Number of gets that found their object. */
+    private long hits;
+    /** Number of gets that did not. */
+    private long misses;
+
+    /** A cache of at most LIMIT bytes, as estimated by WEIGHER.
+     *  @param limit is the most bytes to hold.
+     *  @param weigher estimates the bytes of one object. */
+    public ObjectCache(long limit, ToLongFunction<V> weigher) {
+        this.limit = limit;
+        this.weigher = weigher;
+    }
+
+    /** Return the object ID, or null if it is not cached.
+     *  @param id is the SHA1 code. */
+    public synchronized V get(String id) {
+        V result = entries.get(id);
+        if (result == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return result;
+    }
+
+    /** Keep VALUE as the object ID, evicting the least recently used
+     *  objects to stay within the limit.
+     *  @param id is the SHA1 code.
+     *  @param value is the decoded object. */
+    public synchronized void put(String id, V value) {
+        long w = ENTRY + weigher.applyAsLong(value);
+        if (w > limit) {
+            return;
+        }
+        Long old = weights.put(id, w);
+        if (old != null) {
+            bytes -= old;
+        }
+        entries.put(id, value);
+        bytes += w;
+        Iterator<Map.Entry<String, V>> it = entries.entrySet().iterator();
+        while (bytes > limit && it.hasNext()) {
+            String eldest = it.next().getKey();
+            bytes -= weights.remove(eldest);
+            it.remove();
+        }
+    }
+
+    /** Return the number of gets that found their object. */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /** Return the number of gets that did not. */
+    public synchronized long misses() {
+        return misses;
+    }
+}
@@ -0,0 +1,894 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Where the objects of one kind (blobs or commits) live.  New objects
+ *  are written loose, one file per object named by its SHA1 code; the
+ *  repack command moves loose objects into a PackFile.  Every read looks
+ *  at the loose file first and then at the packs, so callers never need
+ *  to know where an object is.
+ *
+ *  Each stored object starts with MAGIC and a type byte.  A FULL object
+ *  is followed by its content, a DEFLATED object by its content
+ *  compressed with java.util.zip; a DELTA object by the SHA1 code of its
+ *  base object, the length of the delta chain and a Delta against the
+ *  base; a MANIFEST object by the SHA1 codes of the chunks its content
+ *  was cut into by a Chunker.  Chunks are objects of the same store,
+ *  named by the SHA1 code of CHUNK and their content alone, so files
+ *  with the same content, or versions of a file with most of it in
+ *  common, share them.  Objects written before there was a header have
+ *  no MAGIC and are read as they are.
+ *
+ *  Reads may be made from several threads at once.
+ *  @author Claire Ding
+ */
+public class ObjectStore implements Serializable {
+
+    /** First bytes of every object written with a header. */
+    static final byte[] MAGIC = {0x7f, 'G', 'L', 'T'};
+    /** Type byte of an object stored whole. */
+    static final byte FULL = 'F';
+    /** Type byte of an object stored whole and deflated. */
+    static final byte DEFLATED = 'Z';
+    /** Type byte of an object stored as a delta against another. */
+    static final byte DELTA = 'D';
+    /** Type byte of an object stored as a list of chunks. */
+    static final byte MANIFEST = 'M';
+    /** Hashed before the content of a chunk.  No file name starts with
+     *  a NUL, so the code of a chunk is never that of a blob. */
+    static final String CHUNK = "\0";
+    /** Bytes of the header before the payload. */
+    static final int HEADER = MAGIC.length + 1;
+    /** Longest chain of deltas allowed before storing a full copy. */
+    static final int MAX_DEPTH = 16;
+    /** Largest file that is considered for delta compression; bigger
+     *  files are never read whole, so that add stays streaming. */
+    static final long DELTA_LIMIT = 8 << 20;
+    /** Files bigger than this are stored as chunks, set with
+     *  -Dgitlet.chunking=BYTES. */
+    static final long CHUNKED = Long.getLong("gitlet.chunking",
+            DELTA_LIMIT);
+    /** Total bytes of rebuilt objects kept in the base cache. */
+    static final long CACHE_LIMIT = 32 << 20;
+    /** Deflate level for new objects, 0 to 9, set with
+     *  -Dgitlet.compression=LEVEL; 0 turns compression off. */
+    static final int LEVEL = Integer.getInteger("gitlet.compression",
+            Deflater.DEFAULT_COMPRESSION);
+    /** An object is only deflated if a sample of it shrinks to this
+     *  fraction of its size or less. */
+    static final double WORTH_IT = 0.9;
+    /** End of the name of a loose object still being written. */
+    static final String TMP = ".tmp";
+
+    /** Folder of loose objects. */
+    private File looseFolder;
+    /** Folder of packs for this kind of object. */
+    private File packFolder;
+    /** Open packs, loaded on first use. */
+    private transient List<PackFile> packs;
+    /** Modification time of the pack folder when PACKS was read. */
+    private transient long packsStamp;
+    /** Recently rebuilt objects, so that the bases of delta chains are
+     *  not rebuilt again for every object that uses them. */
+    private transient LinkedHashMap<String, byte[]> cache;
+    /** Bytes held in CACHE. */
+    private transient long cacheBytes;
+
+    /** A store keeping loose objects in LOOSEFOLDER and packs in
+     *  PACKFOLDER.
+     *  @param looseFolder is the loose object folder.
+     *  @param packFolder is the pack folder. */
+    public ObjectStore(File looseFolder, File packFolder) {
+        this.looseFolder = looseFolder;
+        this.packFolder = packFolder;
+    }
+
+    /** Create the folders of this store. */
+    public void mkdirs() {
+        looseFolder.mkdirs();
+        packFolder.mkdirs();
+    }
+
+    /** Return whether the object ID exists.
+     *  @param id is the SHA1 code. */
+    public boolean contains(String id) {
+        if (new File(looseFolder, id).isFile()) {
+            return true;
+        }
+        for (PackFile p : packs()) {
+            if (p.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return whether the object ID exists and, if it does, make it look
+     *  just written: set the time the loose file, or the pack holding it,
+     *  was last modified to now.  Used instead of contains before
+     *  referring to an object again rather than writing it, so that a gc
+     *  running at the same time keeps it.
+     *  @param id is the SHA1 code. */
+    public boolean touch(String id) {
+        long now = System.currentTimeMillis();
+        File loose = new File(looseFolder, id);
+        if (loose.isFile()) {
+            loose.setLastModified(now);
+            return true;
+        }
+        for (PackFile p : packs()) {
+            if (p.contains(id)) {
+                p.getPack().setLastModified(now);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return a stream over the content of the object ID, rebuilding it
+     *  if it is stored as a delta.  Throws IllegalArgumentException if
+     *  there is no such object.
+     *  @param id is the SHA1 code. */
+    public InputStream open(String id) {
+        byte[] cached = cacheGet(id);
+        if (cached != null) {
+            return new ByteArrayInputStream(cached);
+        }
+        BufferedInputStream in = new BufferedInputStream(openStored(id),
+                Utils.CHUNK_SIZE);
+        try {
+            in.mark(HEADER);
+            byte[] head = in.readNBytes(HEADER);
+            if (!hasMagic(head)) {
+                in.reset();
+                return in;
+            }
+            if (head[MAGIC.length] == FULL) {
+                return in;
+            }
+            if (head[MAGIC.length] == DEFLATED) {
+                return new InflaterInputStream(in);
+            }
+            if (head[MAGIC.length] == MANIFEST) {
+                byte[] chunks = in.readAllBytes();
+                in.close();
+                return chunks(chunks, 0);
+            }
+            in.close();
+            return new ByteArrayInputStream(content(id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the whole content of the object ID, going through the base
+     *  cache.
+     *  @param id is the SHA1 code. */
+    byte[] content(String id) {
+        byte[] result = cacheGet(id);
+        if (result != null) {
+            return result;
+        }
+        byte[] stored;
+        try (InputStream in = openStored(id)) {
+            stored = in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!hasMagic(stored)) {
+            result = stored;
+        } else if (stored[MAGIC.length] == FULL) {
+            result = Arrays.copyOfRange(stored, HEADER, stored.length);
+        } else if (stored[MAGIC.length] == DEFLATED) {
+            result = inflate(stored, HEADER);
+        } else if (stored[MAGIC.length] == MANIFEST) {
+            try (InputStream in = chunks(stored, HEADER)) {
+                result = in.readAllBytes();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        } else {
+            String base = new String(stored, HEADER, Utils.UID_LENGTH,
+                    StandardCharsets.US_ASCII);
+            int start = HEADER + Utils.UID_LENGTH + 1;
+            result = Delta.apply(content(base),
+                    Arrays.copyOfRange(stored, start, stored.length));
+        }
+        cachePut(id, result);
+        return result;
+    }
+
+    /** Return a stream over the chunks whose SHA1 codes are in LIST from
+     *  START on, opening each one only when the one before is done.
+     *  @param list is the list of a manifest.
+     *  @param start is where the first code starts. */
+    private InputStream chunks(byte[] list, int start) {
+        int n = (list.length - start) / Utils.UID_LENGTH;
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < n;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                int at = start + next * Utils.UID_LENGTH;
+                next += 1;
+                return open(new String(list, at, Utils.UID_LENGTH,
+                        StandardCharsets.US_ASCII));
+            }
+        });
+    }
+
+    /** Return whether the object ID is stored as a MANIFEST.
+     *  @param id is the SHA1 code. */
+    boolean chunked(String id) {
+        try (InputStream in = openStored(id)) {
+            byte[] head = in.readNBytes(HEADER);
+            return hasMagic(head) && head[MAGIC.length] == MANIFEST;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the SHA1 codes of the objects that the object ID is stored
+     *  in terms of: the base of a delta, or the chunks of a manifest.
+     *  @param id is the SHA1 code. */
+    List<String> links(String id) {
+        List<String> result = new ArrayList<>();
+        try (InputStream in = openStored(id)) {
+            byte[] head = in.readNBytes(HEADER);
+            if (!hasMagic(head)) {
+                return result;
+            }
+            byte[] codes;
+            if (head[MAGIC.length] == DELTA) {
+                codes = in.readNBytes(Utils.UID_LENGTH);
+            } else if (head[MAGIC.length] == MANIFEST) {
+                codes = in.readAllBytes();
+            } else {
+                return result;
+            }
+            for (int at = 0; at + Utils.UID_LENGTH <= codes.length;
+                 at += Utils.UID_LENGTH) {
+                result.add(new String(codes, at, Utils.UID_LENGTH,
+                        StandardCharsets.US_ASCII));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Return the length of the delta chain of the object ID, 0 if it is
+     *  stored whole.
+     *  @param id is the SHA1 code. */
+    int depth(String id) {
+        try (InputStream in = openStored(id)) {
+            byte[] head = in.readNBytes(HEADER + Utils.UID_LENGTH + 1);
+            if (!hasMagic(head) || head[MAGIC.length] != DELTA) {
+                return 0;
+            }
+            return head[head.length - 1];
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the number of bytes the object ID takes in the store.
+     *  @param id is the SHA1 code. */
+    long storedSize(String id) {
+        File loose = new File(looseFolder, id);
+        if (loose.isFile()) {
+            return loose.length();
+        }
+        for (PackFile p : packs()) {
+            int i = p.find(id);
+            if (i >= 0) {
+                return p.lengthAt(i);
+            }
+        }
+        throw new IllegalArgumentException("no object " + id);
+    }
+
+    /** Return a stream over the stored bytes of the object ID, header
+     *  and all.
+     *  @param id is the SHA1 code. */
+    private InputStream openStored(String id) {
+        File loose = new File(looseFolder, id);
+        if (loose.isFile()) {
+            Trace.countRead();
+            try {
+                return Trace.reading(new FileInputStream(loose),
+                        Trace.Op.OBJECT_READ);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        for (PackFile p : packs()) {
+            int i = p.find(id);
+            if (i >= 0) {
+                Trace.countRead();
+                return Trace.reading(p.open(i), Trace.Op.OBJECT_READ);
+            }
+        }
+        throw new IllegalArgumentException("no object " + id);
+    }
+
+    /** Return the bytes of the object ID.
+     *  @param id is the SHA1 code. */
+    public byte[] read(String id) {
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return whether BYTES starts with MAGIC.
+     *  @param bytes is the start of a stored object. */
+    private static boolean hasMagic(byte[] bytes) {
+        if (bytes.length < HEADER) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the object ID deserialized and cast to EXPECTEDCLASS.
+     *  @param id is the SHA1 code.
+     *  @param expectedClass is the class of the object. */
+    public <T extends Serializable> T readObject(String id,
+                                                 Class<T> expectedClass) {
+        try (ObjectInputStream in = new ObjectInputStream(open(id))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy the object ID into the file DEST, a piece at a time.
+     *  @param id is the SHA1 code.
+     *  @param dest is the file to create or overwrite. */
+    public void copyTo(String id, File dest) {
+        File loose = new File(looseFolder, id);
+        if (loose.isFile() && cacheGet(id) == null) {
+            Trace.countRead();
+            try (FileChannel in = FileChannel.open(loose.toPath(),
+                    StandardOpenOption.READ)) {
+                ByteBuffer head = ByteBuffer.allocate(HEADER);
+                in.read(head, 0);
+                byte[] h = head.array();
+                if (!hasMagic(h) || h[MAGIC.length] == FULL) {
+                    long start = hasMagic(h) ? HEADER : 0;
+                    Trace.IoEvent event = Trace.begin();
+                    Trace.countWrite();
+                    try (FileChannel out = FileChannel.open(dest.toPath(),
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                        long size = in.size();
+                        long pos = start;
+                        while (pos < size) {
+                            pos += in.transferTo(pos, size - pos, out);
+                        }
+                        Trace.end(event, Trace.Op.COPY, size - start);
+                    }
+                    return;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        Trace.IoEvent event = Trace.begin();
+        Trace.countWrite();
+        try (ReadableByteChannel in = Channels.newChannel(open(id));
+             FileChannel out = FileChannel.open(dest.toPath(),
+                     StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long pos = 0;
+            long n;
+            while ((n = out.transferFrom(in, pos, Utils.CHUNK_SIZE)) > 0) {
+                pos += n;
+            }
+            Trace.end(event, Trace.Op.COPY, pos);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Store BYTES as the loose object ID.
+     *  @param id is the SHA1 code.
+     *  @param bytes is the content. */
+    public void write(String id, byte[] bytes) {
+        File tmp = temp(id);
+        if (LEVEL != 0) {
+            byte[] packed = deflate(bytes);
+            if (packed.length < bytes.length) {
+                Utils.writeContents(tmp, MAGIC, new byte[] {DEFLATED},
+                        packed);
+                install(tmp, id);
+                return;
+            }
+        }
+        Utils.writeContents(tmp, MAGIC, new byte[] {FULL}, bytes);
+        install(tmp, id);
+    }
+
+    /** Store the contents of SRC as the loose object ID.
+     *  @param id is the SHA1 code.
+     *  @param src is the file to copy. */
+    public void writeFile(String id, File src) {
+        File dest = temp(id);
+        if (compressible(src)) {
+            Utils.writeContents(dest, MAGIC, new byte[] {DEFLATED});
+            Deflater def = new Deflater(LEVEL);
+            Trace.IoEvent event = Trace.begin();
+            Trace.countRead();
+            try (InputStream in = new FileInputStream(src);
+                 OutputStream out = new DeflaterOutputStream(
+                         new FileOutputStream(dest, true), def,
+                         Utils.CHUNK_SIZE)) {
+                in.transferTo(out);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                def.end();
+            }
+            Trace.end(event, Trace.Op.OBJECT_WRITE, dest.length());
+            if (dest.length() < src.length() + HEADER) {
+                install(dest, id);
+                return;
+            }
+        }
+        Utils.writeContents(dest, MAGIC, new byte[] {FULL});
+        Trace.IoEvent event = Trace.begin();
+        Trace.countRead();
+        try (FileChannel in = FileChannel.open(src.toPath(),
+                StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dest.toPath(),
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.APPEND)) {
+            long size = in.size();
+            long pos = 0;
+            while (pos < size) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+            Trace.end(event, Trace.Op.OBJECT_WRITE, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        install(dest, id);
+    }
+
+    /** Store the contents of SRC as the loose object ID, as a delta
+     *  against the object BASE when that is worth it: SRC is no bigger
+     *  than DELTA_LIMIT, the chain under BASE is shorter than MAX_DEPTH
+     *  and the delta is less than half the size of SRC.  Otherwise SRC is
+     *  stored whole, or as chunks if it is bigger than CHUNKED.  Nothing
+     *  is written if ID is already stored, which also keeps delta chains
+     *  from ever forming a cycle; it is only touched.
+     *  @param id is the SHA1 code.
+     *  @param src is the file to store.
+     *  @param base is the SHA1 code of an earlier version, or null. */
+    public void writeFile(String id, File src, String base) {
+        if (touch(id)) {
+            return;
+        }
+        if (src.length() > CHUNKED) {
+            writeChunks(id, src);
+            return;
+        }
+        if (base == null || src.length() > DELTA_LIMIT
+                || !contains(base) || storedSize(base) > DELTA_LIMIT
+                || chunked(base)) {
+            writeFile(id, src);
+            return;
+        }
+        int depth = depth(base) + 1;
+        if (depth > MAX_DEPTH) {
+            writeFile(id, src);
+            return;
+        }
+        byte[] target = Utils.readContents(src);
+        byte[] delta = Delta.encode(content(base), target);
+        if (delta.length * 2 >= target.length) {
+            write(id, target);
+            return;
+        }
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        head.writeBytes(MAGIC);
+        head.write(DELTA);
+        head.writeBytes(base.getBytes(StandardCharsets.US_ASCII));
+        head.write(depth);
+        File tmp = temp(id);
+        Utils.writeContents(tmp, head.toByteArray(), delta);
+        install(tmp, id);
+    }
+
+    /** Store the contents of SRC as the loose object ID, a MANIFEST of
+     *  the chunks a Chunker cuts it into.  Only the chunks not already
+     *  stored are written.  SRC is read once, a chunk at a time.
+     *  @param id is the SHA1 code.
+     *  @param src is the file to store. */
+    private void writeChunks(String id, File src) {
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        manifest.writeBytes(MAGIC);
+        manifest.write(MANIFEST);
+        Trace.countRead();
+        try (InputStream in = new FileInputStream(src)) {
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                String code = Utils.sha1(CHUNK, chunk);
+                if (!touch(code)) {
+                    write(code, chunk);
+                }
+                manifest.writeBytes(code.getBytes(
+                        StandardCharsets.US_ASCII));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        File tmp = temp(id);
+        Utils.writeContents(tmp, manifest.toByteArray());
+        install(tmp, id);
+    }
+
+    /** Return a new empty file in the loose folder, named after ID, to
+     *  write the object ID into before install renames it.  Its name is
+     *  never that of an object, so a reader never sees it.
+     *  @param id is the SHA1 code. */
+    private File temp(String id) {
+        try {
+            return Files.createTempFile(looseFolder.toPath(), id, TMP)
+                    .toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rename TMP, written whole, to the loose object ID in one step, so
+     *  that a crash or a full disk leaves either the whole object or
+     *  none, never a torn one that touch would take for stored.
+     *  @param tmp is the file made by temp.
+     *  @param id is the SHA1 code. */
+    private void install(File tmp, String id) {
+        try {
+            Files.move(tmp.toPath(), new File(looseFolder, id).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return whether SRC looks worth deflating: compression is on and
+     *  its first CHUNK_SIZE bytes shrink to WORTH_IT of their size.  This
+     *  keeps already compressed files from being deflated for nothing.
+     *  @param src is the file about to be stored. */
+    private static boolean compressible(File src) {
+        if (LEVEL == 0) {
+            return false;
+        }
+        byte[] sample;
+        Trace.countRead();
+        try (InputStream in = new FileInputStream(src)) {
+            sample = in.readNBytes(Utils.CHUNK_SIZE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return deflate(sample).length <= sample.length * WORTH_IT;
+    }
+
+    /** Return BYTES deflated at LEVEL.
+     *  @param bytes is the data. */
+    static byte[] deflate(byte[] bytes) {
+        Deflater def = new Deflater(LEVEL);
+        try {
+            def.setInput(bytes);
+            def.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[Utils.CHUNK_SIZE];
+            while (!def.finished()) {
+                out.write(buf, 0, def.deflate(buf));
+            }
+            return out.toByteArray();
+        } finally {
+            def.end();
+        }
+    }
+
+    /** Return the bytes of STORED from START on, inflated.
+     *  @param stored is a stored object.
+     *  @param start is where the deflated data starts. */
+    static byte[] inflate(byte[] stored, int start) {
+        try (InputStream in = new InflaterInputStream(
+                new ByteArrayInputStream(stored, start,
+                        stored.length - start))) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the cached content of ID, or null.
+     *  @param id is the SHA1 code. */
+    private synchronized byte[] cacheGet(String id) {
+        return cache == null ? null : cache.get(id);
+    }
+
+    /** Keep CONTENT as the content of ID, evicting the least recently
+     *  used objects to stay within CACHE_LIMIT.
+     *  @param id is the SHA1 code.
+     *  @param content is its content. */
+    private synchronized void cachePut(String id, byte[] content) {
+        if (content.length > CACHE_LIMIT) {
+            return;
+        }
+        if (cache == null) {
+            cache = new LinkedHashMap<>(16, 0.75f, true);
+        }
+        if (cache.put(id, content) == null) {
+            cacheBytes += content.length;
+        }
+        Iterator<Map.Entry<String, byte[]>> it =
+                cache.entrySet().iterator();
+        while (cacheBytes > CACHE_LIMIT && it.hasNext()) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            cacheBytes -= eldest.getValue().length;
+            it.remove();
+        }
+    }
+
+    /** Return the SHA1 codes of every object, loose or packed, in
+     *  lexicographic order. */
+    public List<String> list() {
+        TreeSet<String> all = new TreeSet<>(listLoose());
+        for (PackFile p : packs()) {
+            all.addAll(p.ids());
+        }
+        return new ArrayList<>(all);
+    }
+
+    /** Return the number of objects, loose or packed.  An object both
+     *  loose and packed counts twice. */
+    long count() {
+        long[] result = {0};
+        forEachLoose(id -> result[0] += 1);
+        for (PackFile p : packs()) {
+            result[0] += p.size();
+        }
+        return result[0];
+    }
+
+    /** Call ACTION on the SHA1 code of every object, the loose ones
+     *  first, reading the loose folder as a stream, so that the codes are
+     *  never all in memory at once.  An object both loose and packed is
+     *  given twice.
+     *  @param action is called on each code. */
+    void forEach(Consumer<String> action) {
+        forEachLoose(action);
+        for (PackFile p : packs()) {
+            for (int i = 0; i < p.size(); i += 1) {
+                action.accept(p.idAt(i));
+            }
+        }
+    }
+
+    /** Call ACTION on the SHA1 code of every object written, or touched,
+     *  at or after CUTOFF: the loose objects modified since then and every
+     *  object of a pack modified since then.  These are the objects sweep
+     *  keeps whatever LIVE says.
+     *  @param cutoff is a time in milliseconds since 1970.
+     *  @param action is called on each code. */
+    void forEachSince(long cutoff, Consumer<String> action) {
+        forEachLoose(id -> {
+            if (new File(looseFolder, id).lastModified() >= cutoff) {
+                action.accept(id);
+            }
+        });
+        for (PackFile p : packs()) {
+            if (p.getPack().lastModified() >= cutoff) {
+                for (int i = 0; i < p.size(); i += 1) {
+                    action.accept(p.idAt(i));
+                }
+            }
+        }
+    }
+
+    /** Call ACTION on the SHA1 code of every loose object, in the order
+     *  the folder gives them.
+     *  @param action is called on each code. */
+    private void forEachLoose(Consumer<String> action) {
+        if (!looseFolder.isDirectory()) {
+            return;
+        }
+        try (DirectoryStream<Path> dir =
+                     Files.newDirectoryStream(looseFolder.toPath())) {
+            for (Path path : dir) {
+                String name = path.getFileName().toString();
+                if (name.length() == Utils.UID_LENGTH) {
+                    action.accept(name);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Remove every object that LIVE says no to and that was written
+     *  before CUTOFF.  Loose objects are deleted, and so are objects
+     *  left half written before CUTOFF by a crash.  A pack older than
+     *  CUTOFF that holds such objects is written again without them, and
+     *  deleted.  Returns the number of objects removed and the number of
+     *  bytes freed.
+     *  @param live says whether an object must be kept.
+     *  @param cutoff is a time in milliseconds since 1970. */
+    long[] sweep(Predicate<String> live, long cutoff) {
+        long[] result = new long[2];
+        forEachLoose(id -> {
+            File loose = new File(looseFolder, id);
+            long size = loose.length();
+            if (!live.test(id) && loose.lastModified() < cutoff
+                    && loose.delete()) {
+                result[0] += 1;
+                result[1] += size;
+            }
+        });
+        if (looseFolder.isDirectory()) {
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(
+                    looseFolder.toPath(), "*" + TMP)) {
+                for (Path path : dir) {
+                    File tmp = path.toFile();
+                    long size = tmp.length();
+                    if (tmp.lastModified() < cutoff && tmp.delete()) {
+                        result[1] += size;
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        boolean changed = false;
+        for (PackFile p : new ArrayList<>(packs())) {
+            if (p.getPack().lastModified() >= cutoff) {
+                continue;
+            }
+            int[] keep = new int[p.size()];
+            int n = 0;
+            for (int i = 0; i < p.size(); i += 1) {
+                if (live.test(p.idAt(i))) {
+                    keep[n] = i;
+                    n += 1;
+                }
+            }
+            if (n == p.size()) {
+                continue;
+            }
+            long freed = p.bytes();
+            if (n > 0) {
+                freed -= p.rewrite(packFolder,
+                        Arrays.copyOf(keep, n)).bytes();
+            }
+            p.delete();
+            result[0] += p.size() - n;
+            result[1] += freed;
+            changed = true;
+        }
+        if (changed) {
+            synchronized (this) {
+                packs = null;
+            }
+        }
+        return result;
+    }
+
+    /** Return the SHA1 codes of the loose objects, sorted, leaving out
+     *  objects still being written. */
+    List<String> listLoose() {
+        List<String> names = Utils.plainFilenamesIn(looseFolder);
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(names);
+        result.removeIf(name -> name.length() != Utils.UID_LENGTH);
+        return result;
+    }
+
+    /** Move every loose object into one new pack and delete the loose
+     *  files.  Returns the number of objects packed. */
+    public int repack() {
+        List<String> loose = new ArrayList<>(listLoose());
+        loose.removeIf(this::packed);
+        if (!loose.isEmpty()) {
+            packFolder.mkdirs();
+            packs().add(PackFile.write(packFolder, looseFolder, loose));
+        }
+        for (String id : listLoose()) {
+            if (packed(id)) {
+                new File(looseFolder, id).delete();
+            }
+        }
+        return loose.size();
+    }
+
+    /** Return whether ID is in one of the packs.
+     *  @param id is the SHA1 code. */
+    private boolean packed(String id) {
+        for (PackFile p : packs()) {
+            if (p.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Forget the list of packs if the pack folder changed since it was
+     *  read, as it does when another process repacks. */
+    public synchronized void refresh() {
+        if (packFolder.lastModified() != packsStamp) {
+            packs = null;
+        }
+    }
+
+    /** Return the packs of this store, opening them the first time. */
+    synchronized List<PackFile> packs() {
+        if (packs == null) {
+            packsStamp = packFolder.lastModified();
+            packs = new ArrayList<>();
+            String[] names = packFolder.list((dir, name) ->
+                    name.endsWith(".idx"));
+            if (names != null) {
+                Arrays.sort(names);
+                for (String name : names) {
+                    packs.add(new PackFile(new File(packFolder, name)));
+                }
+            }
+        }
+        return packs;
+    }
+}
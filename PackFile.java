@@ -0,0 +1,351 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** One pack: many objects appended into a single NAME.pack file, plus a
+ *  NAME.idx file that lists every object's SHA1 code in sorted order
+ *  together with where its bytes live in the pack.  The index is
+ *  memory-mapped and searched by binary search, so looking an object up
+ *  costs O(log n) and never opens one file per object.
+ *  @author Claire Ding
+ */
+public class PackFile {
+
+    /** Magic number at the start of every index file. */
+    static final int IDX_MAGIC = 0x47494458;
+    /** Magic number at the start of every pack file. */
+    static final int PACK_MAGIC = 0x5041434b;
+    /** Version of the pack and index formats. */
+    static final int VERSION = 1;
+    /** Bytes in the index header: magic, version and count. */
+    static final int HEADER = 12;
+    /** Bytes of a raw SHA1 code. */
+    static final int SHA_BYTES = 20;
+    /** Bytes of one index entry: SHA1 code, offset and length. */
+    static final int ENTRY = SHA_BYTES + 16;
+
+    /** The pack file holding the object bytes. */
+    private File pack;
+    /** The index file. */
+    private File idx;
+    /** The mapped index file. */
+    private MappedByteBuffer index;
+    /** Number of objects in this pack. */
+    private int count;
+
+    /** Open the pack whose index is IDXFILE.
+     *  @param idxFile is the NAME.idx file. */
+    PackFile(File idxFile) {
+        String name = idxFile.getName();
+        idx = idxFile;
+        pack = new File(idxFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+        Trace.countRead();
+        try (FileChannel ch = FileChannel.open(idxFile.toPath(),
+                StandardOpenOption.READ)) {
+            index = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (index.getInt(0) != IDX_MAGIC || index.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("bad pack index " + idxFile);
+        }
+        count = index.getInt(8);
+    }
+
+    /** Return the number of objects in this pack. */
+    int size() {
+        return count;
+    }
+
+    /** Return the pack file itself. */
+    File getPack() {
+        return pack;
+    }
+
+    /** Return the number of bytes the pack and its index take. */
+    long bytes() {
+        return pack.length() + idx.length();
+    }
+
+    /** Delete the pack, its index first, so that no reader ever finds
+     *  the index without the pack. */
+    void delete() {
+        idx.delete();
+        pack.delete();
+    }
+
+    /** Return the position of ID in the index, or -1 if it is not here.
+     *  @param id is a full SHA1 code. */
+    int find(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = unhex(id);
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareAt(mid, key, SHA_BYTES);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return whether the object ID is in this pack.
+     *  @param id is a full SHA1 code. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Return the SHA1 code of the I-th object in sorted order.
+     *  @param i is the position. */
+    String idAt(int i) {
+        byte[] sha = new byte[SHA_BYTES];
+        index.get(HEADER + i * ENTRY, sha);
+        return Utils.toHex(sha);
+    }
+
+    /** Return the SHA1 codes of every object in this pack, sorted. */
+    List<String> ids() {
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            result.add(idAt(i));
+        }
+        return result;
+    }
+
+    /** Return the number of bytes the object at position I takes.
+     *  @param i is the position. */
+    long lengthAt(int i) {
+        return index.getLong(HEADER + i * ENTRY + SHA_BYTES + 8);
+    }
+
+    /** Return a stream over the bytes of the object at position I.
+     *  @param i is the position. */
+    InputStream open(int i) {
+        long offset = index.getLong(HEADER + i * ENTRY + SHA_BYTES);
+        try {
+            FileChannel ch = FileChannel.open(pack.toPath(),
+                    StandardOpenOption.READ);
+            return new RegionInputStream(ch, offset, offset + lengthAt(i));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Compare the first LEN bytes of the SHA1 code at position I
+     *  with KEY.
+     *  @param i is the position.
+     *  @param key is the raw code to compare with.
+     *  @param len is how many bytes to compare.
+     *  @return negative, zero or positive as for compareTo. */
+    private int compareAt(int i, byte[] key, int len) {
+        int base = HEADER + i * ENTRY;
+        for (int k = 0; k < len; k += 1) {
+            int c = Integer.compare(index.get(base + k) & 0xff,
+                    key[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the raw bytes of the hexadecimal SHA1 code ID.
+     *  @param id is a hexadecimal numeral of even length. */
+    static byte[] unhex(String id) {
+        byte[] result = new byte[id.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(id.substring(2 * i,
+                    2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Where write finds the stored bytes of the objects it packs. */
+    interface Source {
+        /** Append the stored bytes of the I-th object to OUT and return
+         *  how many there were.
+         *  @param i is the position of the object in the list written.
+         *  @param out is the pack being written. */
+        long transferTo(int i, FileChannel out) throws IOException;
+    }
+
+    /** Write a new pack into FOLDER holding the objects IDS, whose bytes
+     *  are the files of the same names in LOOSE, and return it.
+     *  @param folder is where the pack goes.
+     *  @param loose is where the objects are now.
+     *  @param ids are the SHA1 codes of the objects, sorted. */
+    static PackFile write(File folder, File loose, List<String> ids) {
+        return write(folder, ids, (i, out) -> {
+            try (FileChannel in = FileChannel.open(new File(loose,
+                    ids.get(i)).toPath(), StandardOpenOption.READ)) {
+                return transfer(in, 0, in.size(), out);
+            }
+        });
+    }
+
+    /** Write a new pack into FOLDER holding the objects of this pack at
+     *  the positions KEEP, in order, and return it.
+     *  @param folder is where the pack goes.
+     *  @param keep are positions in this pack, in increasing order. */
+    PackFile rewrite(File folder, int[] keep) {
+        List<String> ids = new ArrayList<>(keep.length);
+        for (int i : keep) {
+            ids.add(idAt(i));
+        }
+        try (FileChannel in = FileChannel.open(pack.toPath(),
+                StandardOpenOption.READ)) {
+            return write(folder, ids, (i, out) -> transfer(in,
+                    index.getLong(HEADER + keep[i] * ENTRY + SHA_BYTES),
+                    lengthAt(keep[i]), out));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy LENGTH bytes of IN from POSITION on to the end of OUT and
+     *  return LENGTH.
+     *  @param in is the channel copied from.
+     *  @param position is where the bytes start in IN.
+     *  @param length is how many bytes to copy.
+     *  @param out is the channel appended to. */
+    private static long transfer(FileChannel in, long position, long length,
+                                 FileChannel out) throws IOException {
+        long done = 0;
+        while (done < length) {
+            done += in.transferTo(position + done, length - done, out);
+        }
+        return length;
+    }
+
+    /** Write a new pack into FOLDER holding the objects IDS, whose bytes
+     *  come from SRC, and return it.  The pack file is written first and
+     *  the index last, so a pack only becomes visible once it is
+     *  complete.
+     *  @param folder is where the pack goes.
+     *  @param ids are the SHA1 codes of the objects, sorted.
+     *  @param src gives the bytes of each object. */
+    static PackFile write(File folder, List<String> ids, Source src) {
+        String name = "pack-" + Utils.sha1(new ArrayList<Object>(ids));
+        File packFile = new File(folder, name + ".pack");
+        File idxFile = new File(folder, name + ".idx");
+        File tmpIdx = new File(folder, name + ".idx.tmp");
+        long[] offsets = new long[ids.size()];
+        long[] lengths = new long[ids.size()];
+        Trace.IoEvent event = Trace.begin();
+        Trace.countWrite();
+        try {
+            try (FileChannel out = FileChannel.open(packFile.toPath(),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer head = ByteBuffer.allocate(HEADER);
+                head.putInt(PACK_MAGIC).putInt(VERSION).putInt(ids.size());
+                head.flip();
+                out.write(head);
+                long pos = HEADER;
+                for (int i = 0; i < ids.size(); i += 1) {
+                    offsets[i] = pos;
+                    lengths[i] = src.transferTo(i, out);
+                    pos += lengths[i];
+                }
+                out.force(true);
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmpIdx.toPath())))) {
+                out.writeInt(IDX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(ids.size());
+                for (int i = 0; i < ids.size(); i += 1) {
+                    out.write(unhex(ids.get(i)));
+                    out.writeLong(offsets[i]);
+                    out.writeLong(lengths[i]);
+                }
+            }
+            Files.move(tmpIdx.toPath(), idxFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end(event, Trace.Op.OBJECT_WRITE,
+                packFile.length() + idxFile.length());
+        return new PackFile(idxFile);
+    }
+
+    /** An InputStream over the bytes between two positions of a channel,
+     *  read with positional reads so that several can share a file. */
+    private static class RegionInputStream extends InputStream {
+        /** The channel read from. */
+        private FileChannel ch;
+        /** Next position to read. */
+        private long pos;
+        /** Position just past the region. */
+        private long end;
+
+        /** A stream over [START, END) of CH.
+         *  @param ch is the channel.
+         *  @param start is the first position.
+         *  @param end is the position just past the region. */
+        RegionInputStream(FileChannel ch, long start, long end) {
+            this.ch = ch;
+            this.pos = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= end) {
+                return -1;
+            }
+            len = (int) Math.min(len, end - pos);
+            int n = ch.read(ByteBuffer.wrap(b, off, len), pos);
+            if (n > 0) {
+                pos += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long k = Math.max(0, Math.min(n, end - pos));
+            pos += k;
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - pos);
+        }
+
+        @Override
+        public void close() throws IOException {
+            ch.close();
+        }
+    }
+}
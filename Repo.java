@@ -1,19 +1,33 @@
 package gitlet;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Set;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
-import java.util.SortedMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 
 public class
     Repo implements Serializable {
 
+    /** Number of commits global-log reads in parallel at a time.*/
+    static final int BATCH = 4096;
+    /** Estimated bytes of decoded commits, and of blob maps, kept in
+     * memory, set by -Dgitlet.cache.*/
+    static final long CACHE_LIMIT = Long.getLong("gitlet.cache", 16L << 20);
     /** The main folder.*/
     private File gitletFolder;
     /** Directory to all the Commits.*/
@@ -22,19 +36,55 @@ public class
     private File stageFolder = new File(".gitlet/staging");
     /** Directory to all the Blobs.*/
     private File blobFolder = new File(".gitlet/blobbing");
+    /** Directory to all the trees.*/
+    private File treeFolder = new File(".gitlet/treeing");
+    /** Directory to all the packs.*/
+    private File packFolder = new File(".gitlet/packing");
+    /** All the Blobs, loose or packed.*/
+    private ObjectStore blobStore = new ObjectStore(blobFolder,
+            Utils.join(packFolder, "blobs"));
+    /** All the Commits, loose or packed.*/
+    private ObjectStore commitStore = new ObjectStore(commitFolder,
+            Utils.join(packFolder, "commits"));
+    /** All the directory trees, loose or packed.*/
+    private ObjectStore treeStore = new ObjectStore(treeFolder,
+            Utils.join(packFolder, "trees"));
+    /** The directory trees of the Commits.*/
+    private TreeStore trees = new TreeStore(treeStore);
+    /** Parents and generation numbers of all the Commits.*/
+    private CommitGraph graph = new CommitGraph(
+            new File(".gitlet/commit-graph"), commitStore);
+    /** Index of the commit messages, for find.*/
+    private MessageIndex messageIndex = new MessageIndex(
+            new File(".gitlet/finding"), commitStore);
+    /** Sorted index of the SHA1 codes of all the Commits.*/
+    private IdIndex commitIds = new IdIndex(new File(".gitlet/commit-ids"),
+            commitStore);
+    /** Commits already read, by SHA1 code.*/
+    private transient ObjectCache<Commit> commitCache = new ObjectCache<>(
+            CACHE_LIMIT, c -> 256L + 2L * c.getCommitMessage().length());
+    /** Files of the trees already flattened, by tree SHA1 code.*/
+    private transient ObjectCache<HashMap<String, String>> blobCache =
+            new ObjectCache<>(CACHE_LIMIT, m -> 160L * m.size());
+    /** Stat data and blob codes of the working files.*/
+    private WorkingIndex workIndex = new WorkingIndex(
+            new File(".gitlet/index"));
     /** Directory to all the branches. Need to update HEAD value every call.*/
     private File branchesFolder = new File(".gitlet/branching");
     /**Current working directory.*/
     private File cwd;
-    /**SHA1 code of the Head commit.*/
+    /**SHA1 code of the Head commit, read on first use.*/
     private String _head;
-    /**Name of the current head branch.*/
-    private String bHead = "master";
-    /**Current stage.*/
+    /**Name of the current head branch, read on first use.*/
+    private String bHead;
+    /**Current stage, read on first use.*/
     private Stage myStage;
+    /**Whether myStage changed since it was read or written.*/
+    private boolean stageDirty;
 
 
-    /**Key is the name of the remote and value is the directory.*/
+    /**Key is the name of the remote and value is the directory, read on
+     * first use.*/
     private HashMap<String, String> remoteMap;
     /**File that stores remoteMap.*/
     private File _remote = new File(".gitlet/remote");
@@ -43,28 +93,67 @@ public class
 
 
 
+    /**Nothing is read here: the stage, HEAD, BHEAD and the remotes are
+     * each read the first time a command needs them.*/
     public Repo() {
         cwd = new File(System.getProperty("user.dir"));
+    }
 
-        File oldStage = new File(".gitlet/staging/stage");
-        if (oldStage.exists()) {
-            myStage = Utils.readObject(oldStage, Stage.class);
-        }
-        File oldHead = new File(".gitlet/branching/HEAD");
-        if (oldHead.exists()) {
-            _head = Utils.readContentsAsString(oldHead);
-        }
-        File oldBranchHead = new File(".gitlet/branching/BHEAD");
-        if (oldBranchHead.exists()) {
-            bHead = Utils.readContentsAsString(oldBranchHead);
-        }
+    /**Forget the stage, HEAD, BHEAD, the remotes, the working index and
+     * what is known of the packs and the commit graph, which another
+     * process may have changed, so that a daemon can run the next command
+     * on this Repo as if it were new.  Caches of objects, which never
+     * change, are kept.*/
+    public void refresh() {
+        _head = null;
+        bHead = null;
+        myStage = null;
+        stageDirty = false;
+        remoteMap = null;
+        workIndex = new WorkingIndex(new File(".gitlet/index"));
+        graph.refresh();
+        blobStore.refresh();
+        commitStore.refresh();
+        treeStore.refresh();
+    }
 
+    /**Return the SHA1 code of the Head commit.*/
+    private String head() {
+        if (_head == null) {
+            File oldHead = new File(branchesFolder, "HEAD");
+            if (oldHead.exists()) {
+                _head = Utils.readContentsAsString(oldHead);
+            }
+        }
+        return _head;
+    }
 
-        if (_remote.exists()) {
-            remoteMap = Utils.readObject(_remote, HashMap.class);
+    /**Return the name of the current head branch.*/
+    private String bHead() {
+        if (bHead == null) {
+            File oldBranchHead = new File(branchesFolder, "BHEAD");
+            bHead = oldBranchHead.exists()
+                    ? Utils.readContentsAsString(oldBranchHead) : "master";
         }
+        return bHead;
+    }
 
+    /**Return the current stage.*/
+    private Stage stage() {
+        if (myStage == null) {
+            myStage = Stage.read(stageFolder);
+        }
+        return myStage;
+    }
 
+    /**Return the map of remotes.*/
+    private HashMap<String, String> remotes() {
+        if (remoteMap == null) {
+            remoteMap = _remote.exists()
+                    ? Utils.readObject(_remote, HashMap.class)
+                    : new HashMap<>();
+        }
+        return remoteMap;
     }
 
 
@@ -78,20 +167,20 @@ public class
         } else {
 
             gitletFolder.mkdirs();
-            blobFolder.mkdirs();
+            blobStore.mkdirs();
             branchesFolder.mkdirs();
-            commitFolder.mkdirs();
+            commitStore.mkdirs();
+            treeStore.mkdirs();
             stageFolder.mkdirs();
 
             myStage = new Stage();
-            Utils.writeObject(Utils.join(stageFolder, "stage"), myStage);
+            myStage.save(stageFolder);
 
 
             Commit initialCommit = new Commit("initial commit",
-                    null, new HashMap<>());
+                    null, trees.write(new TreeMap<>()));
             String initHash = initialCommit.getShaID();
-            Utils.writeObject(Utils.join(commitFolder, initHash),
-                    initialCommit);
+            saveCommit(initialCommit);
             _head = initHash;
             Utils.writeContents(Utils.join(branchesFolder, "HEAD"), _head);
             Utils.writeContents(Utils.join(branchesFolder, "BHEAD"), "master");
@@ -104,39 +193,113 @@ public class
     }
 
     /**
-     * Adds a copy of the file as it currently exists to the staging area.
-     * @param filename .
+     * Adds a copy of the files as they currently exist to the staging
+     * area.  Each path may be a file, a directory, whose files are all
+     * added, or a glob pattern such as "src/*.java", matched against the
+     * files of the working directory.  Nothing is staged if some path
+     * matches no file.  The files are hashed in parallel.
+     * @param paths .
      */
-    public void add(String filename) {
-        File toStage = new File(filename);
-        if (!toStage.exists()) {
-            System.out.println("File does not exist.");
-        } else {
-            Blob thisBaby = new Blob(filename);
-            String blobCode = thisBaby.getBlobCode();
-            byte[] blobByte = thisBaby.getContentByte();
-            if (myStage.getReList().contains(filename)) {
-                myStage.deleteFromReList(filename);
-                saveStage();
+    public void add(String... paths) {
+        TreeSet<String> names = new TreeSet<>();
+        for (String path : paths) {
+            if (!expand(path, names)) {
+                System.out.println("File does not exist.");
                 return;
             }
-            if (getCurrCommit().getBlob().containsKey(filename)
-                    && getCurrCommit().getBlob().get(filename).
-                    equals(blobCode)) {
-                if (myStage.getAddList().containsKey(filename)) {
-                    myStage.deleteFromAddList(filename);
+        }
+        List<String> list = new ArrayList<>(names);
+        Trace.phase("hash");
+        Map<String, String> codes = workIndex.hashAll(list);
+        Trace.phase("stage");
+        HashMap<String, String> currBlob = blobsOf(getCurrCommit());
+        for (String filename : list) {
+            add(filename, codes.get(filename), currBlob);
+        }
+    }
+    /**Add to NAMES the working files PATH stands for, and return whether
+     * there was at least one.
+     * @param path is a file, directory or glob pattern
+     * @param names collects the file names */
+    private boolean expand(String path, TreeSet<String> names) {
+        File file = new File(path);
+        String normal = workingName(path);
+        if (normal == null) {
+            return false;
+        }
+        if (file.isFile()) {
+            names.add(normal);
+            return true;
+        }
+        List<String> found = new ArrayList<>();
+        if (file.isDirectory()) {
+            String prefix = normal.isEmpty() ? ""
+                    : normal + TreeStore.SEP;
+            workingFiles(file, prefix, found);
+        } else if (path.matches(".*[*?\\[{].*")) {
+            path = normal;
+            PathMatcher glob = FileSystems.getDefault()
+                    .getPathMatcher("glob:" + path);
+            for (String name : workingFiles()) {
+                if (glob.matches(Paths.get(name))) {
+                    found.add(name);
                 }
-                return;
             }
-            if (myStage.getAddList().containsKey(filename)
-                    && !myStage.getAddList().get(filename).equals(blobCode)) {
-                myStage.deleteFromAddList(filename);
-            }
-            myStage.addToAddList(filename, blobCode);
-            Utils.writeContents(Utils.join(blobFolder, blobCode), blobByte);
+        }
+        names.addAll(found);
+        return !found.isEmpty();
+    }
+    /**Return PATH as the name of a working file: relative to the working
+     * directory, without . or .. parts, with '/' between directories, and
+     * "" for the working directory itself.  Return null if PATH is
+     * outside the working directory or inside .gitlet.
+     * @param path is a path given to a command */
+    private String workingName(String path) {
+        Path root = cwd.toPath().toAbsolutePath().normalize();
+        Path rel = root.relativize(root.resolve(path).normalize());
+        List<String> parts = new ArrayList<>();
+        for (Path part : rel) {
+            parts.add(part.toString());
+        }
+        if (parts.size() == 1 && parts.get(0).isEmpty()) {
+            return "";
+        }
+        if (parts.get(0).equals("..") || parts.get(0).equals(".gitlet")) {
+            return null;
+        }
+        return String.join(TreeStore.SEP, parts);
+    }
+    /**Stage the working file FILENAME, whose blob code is BLOBCODE, given
+     * the files CURRBLOB of the current commit.  The blob is not written
+     * again if it is already stored.
+     * @param filename is the file name
+     * @param blobCode is its blob code
+     * @param currBlob is the files of the current commit */
+    private void add(String filename, String blobCode,
+                     HashMap<String, String> currBlob) {
+        String base = stage().getAddList().get(filename);
+        if (base == null) {
+            base = currBlob.get(filename);
+        }
+        if (stage().getReList().contains(filename)) {
+            stage().deleteFromReList(filename);
             saveStage();
-
+            return;
         }
+        if (currBlob.containsKey(filename)
+                && currBlob.get(filename).equals(blobCode)) {
+            if (stage().getAddList().containsKey(filename)) {
+                stage().deleteFromAddList(filename);
+                saveStage();
+            }
+            return;
+        }
+        if (blobCode.equals(stage().getAddList().get(filename))) {
+            return;
+        }
+        stage().addToAddList(filename, blobCode);
+        blobStore.writeFile(blobCode, new File(filename), base);
+        saveStage();
     }
     /**Description: Saves a snapshot of tracked files in the current commit and
      * staging area so they can be restored at a later time,
@@ -145,84 +308,136 @@ public class
      * @throws IOException
      */
     public void commit(String message) throws IOException {
-        if (myStage.getAddList().isEmpty()
-                && myStage.getReList().isEmpty()) {
+        if (stage().getAddList().isEmpty()
+                && stage().getReList().isEmpty()) {
             System.out.println("No changes added to the commit.");
         } else if (message.equals("")) {
             System.out.println("Please enter a commit message.");
         } else {
             Commit currCommit = getCurrCommit();
             String parentID = currCommit.getShaID();
-            HashMap blobCopy = (HashMap) currCommit.getBlob().clone();
-            Set<String> toAdd = myStage.getAddList().keySet();
-            for (String name : toAdd) {
-                blobCopy.put(name, myStage.getAddList().get(name));
+            HashMap<String, String> changes =
+                    new HashMap<>(stage().getAddList());
+            for (String name : stage().getReList()) {
+                changes.put(name, null);
             }
-            for (String name : myStage.getReList()) {
-                if (blobCopy.containsKey(name)) {
-                    blobCopy.remove(name);
-                }
-            }
-            Commit me = new Commit(message, parentID, blobCopy);
+            Trace.phase("tree");
+            Commit me = new Commit(message, parentID,
+                    trees.update(treeOf(currCommit), changes));
+            Trace.phase("write");
             saveCommit(me);
             saveHead(me.getShaID());
             updateCurrBranch(me.getShaID());
-            myStage.clearAll();
+            stage().clearAll();
             saveStage();
         }
     }
     /** Unstage the file if it is currently staged for addition.
      *  @param fname is file name*/
     public void rm(String fname) {
-        if (!myStage.getAddList().containsKey(fname)
-                && !getCurrCommit().getBlob().containsKey(fname)) {
+        HashMap<String, String> currBlob = blobsOf(getCurrCommit());
+        if (!stage().getAddList().containsKey(fname)
+                && !currBlob.containsKey(fname)) {
             System.out.println("No reason to remove the file.");
         } else {
-            if (myStage.getAddList().containsKey(fname)) {
-                myStage.deleteFromAddList(fname);
+            if (stage().getAddList().containsKey(fname)) {
+                stage().deleteFromAddList(fname);
                 saveStage();
             }
-            if (getCurrCommit().getBlob().containsKey(fname)) {
-                myStage.addToReList(fname);
+            if (currBlob.containsKey(fname)) {
+                stage().addToReList(fname);
                 saveStage();
-                Utils.restrictedDelete(fname);
+                deleteFile(fname);
+                workIndex.remove(fname);
             }
         }
     }
     public void log() {
-        Commit curr = getCurrCommit();
-        while (curr != null) {
-            curr.myLog();
-            if (curr.getParentID() != null) {
-                curr = Utils.readObject(Utils.join(commitFolder,
-                        curr.getParentID()), Commit.class);
-            } else {
-                break;
-            }
+        for (int pos = graph.position(head()); pos != CommitGraph.NONE;
+             pos = graph.parent1(pos)) {
+            readCommit(graph.idAt(pos)).myLog();
         }
     }
-    /**Like log, except displays information about all commits ever made.*/
+    /**Like log, except displays information about all commits ever made.
+     * Commits are read and formatted in parallel, BATCH at a time so that
+     * memory stays bounded, and printed in order of their ids.*/
     public void globalLog() {
-        List<String> names = Utils.plainFilenamesIn(commitFolder);
-        for (String name: names) {
-            Commit commit =
-                    Utils.readObject(new File(commitFolder,
-                            name), Commit.class);
-            commit.myLog();
+        List<String> names = commitStore.list();
+        BufferedWriter out = logWriter();
+        try {
+            for (int i = 0; i < names.size(); i += BATCH) {
+                List<String> entries = names.subList(i,
+                        Math.min(names.size(), i + BATCH)).parallelStream()
+                        .map(name -> Commit.read(commitStore, name)
+                                .logEntry())
+                        .collect(Collectors.toList());
+                for (String entry: entries) {
+                    out.write(entry);
+                }
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
     }
-    public void find(String message) {
-        List<String> names = Utils.plainFilenamesIn(commitFolder);
-        boolean found = false;
-        for (String name: names) {
-            Commit commit = Utils.readObject(new File(commitFolder,
-                    name), Commit.class);
-            if (commit.getCommitMessage().equals(message)) {
-                found = true;
-                Utils.message(commit.getShaID());
+    /**Like globalLog, but prints each commit as soon as it is read, in
+     * no particular order.
+     * @param how must be --unordered */
+    public void globalLog(String how) {
+        if (!how.equals("--unordered")) {
+            Utils.message("Incorrect operands.");
+            return;
+        }
+        BufferedWriter out = logWriter();
+        commitStore.list().parallelStream().forEach(name -> {
+            String entry = Commit.read(commitStore, name).logEntry();
+            synchronized (out) {
+                try {
+                    out.write(entry);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
             }
+        });
+        try {
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+    /**Return one buffered writer on standard output for a log.*/
+    private BufferedWriter logWriter() {
+        return new BufferedWriter(new OutputStreamWriter(System.out),
+                Utils.CHUNK_SIZE);
+    }
+    /**Prints out the ids of all commits that have the given
+     * commit message.
+     * @param message */
+    public void find(String message) {
+        messageIndex.build();
+        findHelper(messageIndex.exact(message));
+    }
+    /**Prints out the ids of all commits whose message has the word
+     * (--token) or a word starting with the text (--prefix).
+     * @param how is --token or --prefix
+     * @param text */
+    public void find(String how, String text) {
+        messageIndex.build();
+        if (how.equals("--token")) {
+            findHelper(messageIndex.token(text));
+        } else if (how.equals("--prefix")) {
+            findHelper(messageIndex.prefix(text));
+        } else {
+            Utils.message("Incorrect operands.");
+        }
+    }
+    /**Prints the ids found by find.
+     * @param ids */
+    private void findHelper(List<String> ids) {
+        for (String id: ids) {
+            Utils.message(id);
         }
-        if (!found) {
+        if (ids.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
@@ -246,7 +461,9 @@ public class
         }
         Utils.message("");
         Utils.message("=== Removed Files ===");
-        for (String f : myStage.getReList()) {
+        List<String> removed = new ArrayList<>(stage().getReList());
+        Collections.sort(removed);
+        for (String f : removed) {
             Utils.message(f);
         }
         Utils.message("");
@@ -269,7 +486,7 @@ public class
             if (f.getName().equals("HEAD") || f.getName().equals("BHEAD")) {
                 continue;
             }
-            if (f.getName().equals(bHead)) {
+            if (f.getName().equals(bHead())) {
                 branchName.add("*" + f.getName());
             } else {
                 branchName.add(f.getName());
@@ -277,32 +494,36 @@ public class
         }
         Collections.sort(branchName);
         List<String> staged = new ArrayList<>();
-        for (String f: myStage.getAddList().keySet()) {
+        for (String f: stage().getAddList().keySet()) {
             staged.add(f);
         }
         Collections.sort(staged);
-        Collections.sort(myStage.getReList());
         List<String> modified = new ArrayList<>();
-        for (String f: getCurrCommit().getBlob().keySet()) {
+        HashMap<String, String> currBlob = blobsOf(getCurrCommit());
+        List<String> tracked = new ArrayList<>(currBlob.keySet());
+        for (String f: stage().getAddList().keySet()) {
+            if (!currBlob.containsKey(f)) {
+                tracked.add(f);
+            }
+        }
+        Trace.phase("hash");
+        Map<String, String> codes = workIndex.hashAll(tracked);
+        Trace.phase("classify");
+        for (String f: currBlob.keySet()) {
             if (new File(f).exists()) {
-                String bContent = Utils.readContentsAsString(
-                        new File(blobFolder, getCurrCommit().getBlob().get(f)));
-                if (!Utils.readContentsAsString(new File(f)).equals(bContent)
-                        && !myStage.getAddList().containsKey(f)) {
+                if (!stage().getAddList().containsKey(f)
+                        && !currBlob.get(f).equals(codes.get(f))) {
                     modified.add(f + " (modified)");
                 }
             } else {
-                if (!myStage.getReList().contains(f)) {
+                if (!stage().getReList().contains(f)) {
                     modified.add(f + " (deleted)");
                 }
             }
         }
-        for (String f: myStage.getAddList().keySet()) {
+        for (String f: stage().getAddList().keySet()) {
             if (new File(f).exists()) {
-                String bContent =
-                        Utils.readContentsAsString(Utils.join(blobFolder,
-                        myStage.getAddList().get(f)));
-                if (!Utils.readContentsAsString(new File(f)).equals(bContent)) {
+                if (!stage().getAddList().get(f).equals(codes.get(f))) {
                     modified.add(f + " (modified)");
                 }
             } else {
@@ -310,10 +531,11 @@ public class
             }
         }
         Collections.sort(modified);
+        Trace.phase("untracked");
         List<String> untracked = new ArrayList<>();
-        for (String f: Utils.plainFilenamesIn(cwd)) {
-            if (!getCurrCommit().getBlob().containsKey(f)
-                    && !myStage.getAddList().containsKey(f)) {
+        for (String f: workingFiles()) {
+            if (!currBlob.containsKey(f)
+                    && !stage().getAddList().containsKey(f)) {
                 untracked.add(f);
             }
         }
@@ -324,7 +546,7 @@ public class
      * the front of the current branch, and puts it in the working directory.
      * @param fname */
     public void checkout1(String fname) {
-        checkout2(_head, fname);
+        checkout2(head(), fname);
     }
     /**Takes the version of the file as it
      * exists in the commit with the given id.
@@ -332,33 +554,21 @@ public class
      * @param comID
      * @param fname */
     public void checkout2(String comID, String fname) {
-        for (String realID: commitFolder.list()) {
-            if (realID.contains(comID)) {
-                comID = realID;
-                break;
-            }
-        }
-        File commit = new File(commitFolder, comID);
-        if (!commit.exists()) {
-            Utils.message("No commit with that id exists.");
+        comID = resolveCommitID(comID);
+        if (comID == null) {
             return;
         }
-        Commit curr = Utils.readObject(commit, Commit.class);
-        if (!curr.getBlob().containsKey(fname)) {
+        String blobCode = blobsOf(readCommit(comID)).get(fname);
+        if (blobCode == null) {
             Utils.message("File does not exist in that commit.");
             return;
         }
-        if (new File(cwd, fname).exists()) {
-            Utils.restrictedDelete(new File(cwd, fname));
-        }
-        if (myStage.getAddList().containsKey(fname)) {
-            myStage.deleteFromAddList(fname);
+        if (stage().getAddList().containsKey(fname)) {
+            stage().deleteFromAddList(fname);
             saveStage();
         }
-        String blobCode = curr.getBlob().get(fname);
-        byte[] blobContent = Utils.readContents(Utils.
-                join(blobFolder, blobCode));
-        Utils.writeContents(Utils.join(cwd, fname), blobContent);
+        restore(fname, blobCode);
+        workIndex.record(fname, blobCode);
     }
     /**Takes all files in the commit at the head of the given branch,
      * and puts them in the working directory.
@@ -370,39 +580,83 @@ public class
             return;
         }
         String commitID = Utils.readContentsAsString(branch);
-        if (branchName.equals(bHead)) {
+        if (branchName.equals(bHead())) {
             Utils.message("No need to checkout the current branch.");
             return;
         }
-        Commit currCom = Utils.readObject(new File(commitFolder,
-                commitID), Commit.class);
-        HashMap<String, String> babeblob = currCom.getBlob();
-        for (String name: Utils.plainFilenamesIn(cwd)) {
-            if (!getCurrCommit().getBlob().containsKey(name)
-                    && babeblob.containsKey(name)) {
-                Utils.message("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                return;
-            }
-        }
-        for (String file: getCurrCommit().getBlob().keySet()) {
-            if (!babeblob.containsKey(file)) {
-                Utils.restrictedDelete(file);
-            }
-        }
-
-        for (String fname: babeblob.keySet()) {
-            byte[] content = Utils.readContents(new File(blobFolder,
-                    babeblob.get(fname)));
-            Utils.writeContents(new File(fname), content);
+        Commit currCom = readCommit(commitID);
+        if (untrackedInTheWay(getCurrCommit(), currCom)) {
+            return;
         }
+        checkoutFiles(getCurrCommit(), currCom);
 
-        saveStage();
         saveBHead(branchName);
         saveCommit(currCom);
         saveHead(commitID);
 
     }
+    /**Make the working directory match the commit TARGET, when it now
+     * holds the files of the commit CURR.  Only the files that differ are
+     * touched: the trees of the two commits are compared, skipping every
+     * directory whose tree is the same in both, and files tracked in CURR
+     * but not TARGET are deleted while files whose blob codes differ are
+     * written.  Files with the same code in both are written only if the
+     * working copy was changed (the stat cache tells without reading
+     * them).  The writes run on the fork-join pool.
+     * @param curr is the current commit.
+     * @param target is the commit to check out. */
+    private void checkoutFiles(Commit curr, Commit target) {
+        Trace.phase("diff");
+        TreeMap<String, String> changed = trees.diff(treeOf(curr),
+                treeOf(target));
+        HashMap<String, String> targetBlob = blobsOf(target);
+        List<String> same = new ArrayList<>();
+        List<String> toWrite = new ArrayList<>();
+        for (Map.Entry<String, String> e: changed.entrySet()) {
+            if (e.getValue() == null) {
+                deleteFile(e.getKey());
+                workIndex.remove(e.getKey());
+            } else {
+                toWrite.add(e.getKey());
+            }
+        }
+        for (String fname: targetBlob.keySet()) {
+            if (!changed.containsKey(fname)) {
+                same.add(fname);
+            }
+        }
+        Trace.phase("hash");
+        Map<String, String> codes = workIndex.hashAll(same);
+        for (String fname: same) {
+            if (!targetBlob.get(fname).equals(codes.get(fname))) {
+                toWrite.add(fname);
+            }
+        }
+        Trace.phase("write");
+        toWrite.parallelStream().forEach(fname ->
+                restore(fname, targetBlob.get(fname)));
+        for (String fname: toWrite) {
+            workIndex.record(fname, targetBlob.get(fname));
+        }
+    }
+    /**Print the error and return true if a file in the working directory
+     * is not tracked by CURR but would be overwritten by checking out
+     * TARGET.
+     * @param curr is the current commit.
+     * @param target is the commit to check out. */
+    private boolean untrackedInTheWay(Commit curr, Commit target) {
+        HashMap<String, String> currBlob = blobsOf(curr);
+        HashMap<String, String> targetBlob = blobsOf(target);
+        for (String name: workingFiles()) {
+            if (!currBlob.containsKey(name)
+                    && targetBlob.containsKey(name)) {
+                Utils.message("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
+                return true;
+            }
+        }
+        return false;
+    }
     /**Creates a new branch with the given name,
      * and points it at the current head node.
      * @param name */
@@ -412,7 +666,7 @@ public class
             Utils.message("A branch with that name already exists.");
             return;
         }
-        Utils.writeContents(newBranch, _head);
+        Utils.writeContents(newBranch, head());
     }
     /**Deletes the branch with the given name.
      * @param bname */
@@ -422,7 +676,7 @@ public class
             Utils.message("A branch with that name does not exist.");
             return;
         }
-        if (bname.equals(bHead)) {
+        if (bname.equals(bHead())) {
             Utils.message("Cannot remove the current branch.");
             return;
         }
@@ -431,48 +685,24 @@ public class
     /**Checks out all the files tracked by the given commit.
      * @param commitID */
     public void reset(String commitID) {
-        for (String realID: commitFolder.list()) {
-            if (realID.contains(commitID)) {
-                commitID = realID;
-                break;
-            }
-        }
-        File commitPath = new File(commitFolder, commitID);
-        if (!commitPath.exists()) {
-            Utils.message("No commit with that id exists.");
+        commitID = resolveCommitID(commitID);
+        if (commitID == null) {
             return;
         }
-        Commit com = Utils.readObject(Utils.join(commitFolder,
-                commitID), Commit.class);
-        HashMap<String, String> blob = com.getBlob();
-        for (String name: Utils.plainFilenamesIn(cwd)) {
-            if (!getCurrCommit().getBlob().containsKey(name)
-                    && blob.containsKey(name)) {
-                Utils.message("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                return;
-            }
-        }
-        for (String file: getCurrCommit().getBlob().keySet()) {
-            if (!blob.containsKey(file)) {
-                Utils.restrictedDelete(file);
-            }
-        }
-
-        for (String fname: blob.keySet()) {
-            byte[] content =
-                    Utils.readContents(new File(blobFolder, blob.get(fname)));
-            Utils.writeContents(new File(fname), content);
+        Commit com = readCommit(commitID);
+        if (untrackedInTheWay(getCurrCommit(), com)) {
+            return;
         }
-        myStage.clearAll();
+        checkoutFiles(getCurrCommit(), com);
+        stage().clearAll();
         saveStage();
         saveHead(com.getShaID());
         updateCurrBranch(com.getShaID());
     }
     public boolean mergeCheck(String givenBranch) {
         boolean value = true;
-        if (myStage.getAddList().size() != 0
-                || myStage.getReList().size() != 0) {
+        if (stage().getAddList().size() != 0
+                || stage().getReList().size() != 0) {
             Utils.message("You have uncommitted changes.");
             return false;
         }
@@ -481,81 +711,77 @@ public class
             Utils.message("A branch with that name does not exist.");
             return false;
         }
-        if (givenBranch.equals(bHead)) {
+        if (givenBranch.equals(bHead())) {
             Utils.message("Cannot merge a branch with itself.");
             return false;
         }
-        Commit givenCommit = Utils.readObject(Utils.join(commitFolder,
-                Utils.readContentsAsString(branchPath)), Commit.class);
-        Commit currCommit = getCurrCommit();
-        for (String name: Utils.plainFilenamesIn(cwd)) {
-            if (!currCommit.getBlob().containsKey(name)
-                    && givenCommit.getBlob().containsKey(name)) {
-                Utils.message("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                return false;
-            }
+        Commit givenCommit =
+                readCommit(Utils.readContentsAsString(branchPath));
+        if (untrackedInTheWay(getCurrCommit(), givenCommit)) {
+            return false;
         }
         return value;
     }
-    public ArrayList<String> makeArray(HashMap<String, String> givenBlob,
-                                       HashMap<String, String> currBlob,
-                                       HashMap<String, String> splitBlob) {
-        ArrayList<String> files = new ArrayList<>();
-        for (String fname: givenBlob.keySet()) {
-            files.add(fname);
-        }
-        for (String fname: currBlob.keySet()) {
-            if (!files.contains(fname)) {
-                files.add(fname);
-            }
-        }
-        for (String fname: splitBlob.keySet()) {
-            if (!files.contains(fname)) {
-                files.add(fname);
-            }
-        }
-        return files;
-
-
+    /**Return the files that may need merging: those changed since the
+     * split point on either side.  Every other file is the same in all
+     * three commits, and whole directories unchanged on both sides are
+     * never read.
+     * @param split is the split point.
+     * @param curr is the current commit.
+     * @param given is the commit being merged in. */
+    public ArrayList<String> makeArray(Commit split, Commit curr,
+                                       Commit given) {
+        TreeSet<String> files = new TreeSet<>();
+        files.addAll(trees.diff(treeOf(split), treeOf(curr)).keySet());
+        files.addAll(trees.diff(treeOf(split), treeOf(given)).keySet());
+        return new ArrayList<>(files);
     }
     public void merge(String givenBranch) throws IOException {
         if (mergeCheck(givenBranch)) {
             File branchPath = new File(branchesFolder, givenBranch);
-            Commit givenCommit = Utils.readObject(Utils.join(commitFolder,
-                    Utils.readContentsAsString(branchPath)), Commit.class);
+            Commit givenCommit =
+                    readCommit(Utils.readContentsAsString(branchPath));
             Commit currCommit = getCurrCommit();
-            TreeMap<Float, String> allGivenCommits = new TreeMap();
-            findSplitHelper(givenCommit, allGivenCommits, (float) 0);
-            TreeMap<Float, String> allCurrCommits = new TreeMap();
-            findSplitHelper(currCommit, allCurrCommits, (float) 0);
-            Commit splitCommit =
-                    findSplitPoint(allCurrCommits, allGivenCommits);
+            Trace.phase("split");
+            Commit splitCommit = findSplitPoint(currCommit.getShaID(),
+                    givenCommit.getShaID());
             if (splitCommit.getShaID().equals(currCommit.getShaID())) {
                 Utils.message("Current branch fast-forwarded.");
                 checkout3(givenBranch);
                 return;
             }
 
-            if (allCurrCommits.containsValue(givenCommit.getShaID())) {
+            if (splitCommit.getShaID().equals(givenCommit.getShaID())) {
                 Utils.message("Given branch is an ancestor of "
                         + "the current branch.");
                 return;
             }
-            HashMap<String, String> givenBlob = givenCommit.getBlob();
-            HashMap<String, String> currBlob = currCommit.getBlob();
-            HashMap<String, String> splitBlob = splitCommit.getBlob();
-            ArrayList<String> files = makeArray(givenBlob, currBlob, splitBlob);
-
+            Trace.phase("diff");
+            HashMap<String, String> givenBlob = blobsOf(givenCommit);
+            HashMap<String, String> currBlob = blobsOf(currCommit);
+            HashMap<String, String> splitBlob = blobsOf(splitCommit);
+            ArrayList<String> files = makeArray(splitCommit, currCommit,
+                    givenCommit);
+            Trace.phase("classify");
             HashMap<String, String> newBlob = superHelpful(givenBlob,
                     currBlob, splitBlob, files, currCommit, givenCommit);
+            HashMap<String, String> changes = new HashMap<>();
+            for (String file: files) {
+                if (!Objects.equals(currBlob.get(file), givenBlob.get(file))
+                        && !Objects.equals(newBlob.get(file),
+                        currBlob.get(file))) {
+                    changes.put(file, newBlob.get(file));
+                }
+            }
+            Trace.phase("commit");
             Commit newCommit = new Commit("Merged " + givenBranch
-                    + " into " + bHead + ".", currCommit.getShaID(),
-                    givenCommit.getShaID(), newBlob);
+                    + " into " + bHead() + ".", currCommit.getShaID(),
+                    givenCommit.getShaID(),
+                    trees.update(treeOf(currCommit), changes));
             saveCommit(newCommit);
             saveHead(newCommit.getShaID());
             updateCurrBranch(newCommit.getShaID());
-            myStage.clearAll();
+            stage().clearAll();
             saveStage();
         }
     }
@@ -581,12 +807,11 @@ public class
                             equals(currBlob.get(file)))) {
                         if (givenBlob.containsKey(file)) {
                             newBlob.put(file, givenBlob.get(file));
-                            byte[] content =
-                                    Utils.readContents(new File(blobFolder,
-                                            givenBlob.get(file)));
-                            Utils.writeContents(new File(file), content);
+                            restore(file, givenBlob.get(file));
+                            workIndex.record(file, givenBlob.get(file));
                         } else {
-                            Utils.restrictedDelete(file);
+                            deleteFile(file);
+                            workIndex.remove(file);
                         }
                     } else if ((!splitBlob.containsKey(file)
                             && !givenBlob.containsKey(file))
@@ -601,9 +826,8 @@ public class
                         conflict(file, currCommit, givenCommit);
                         add(file);
                         Blob conflict = new Blob(file);
-                        Utils.writeContents(Utils.join(blobFolder,
-                                conflict.getBlobCode()),
-                                conflict.getContentByte());
+                        blobStore.writeFile(conflict.getBlobCode(),
+                                new File(file), currBlob.get(file));
                         newBlob.put(file, conflict.getBlobCode());
                         Utils.message("Encountered a merge conflict.");
                     }
@@ -619,55 +843,152 @@ public class
         String end = ">>>>>>>\n";
         String curr = "";
         String given = "";
-        if (currCom.getBlob().containsKey(fname)) {
-            curr = Utils.readContentsAsString(Utils.join(blobFolder,
-                    currCom.getBlob().get(fname)));
+        String currCode = blobsOf(currCom).get(fname);
+        String givenCode = blobsOf(givenCom).get(fname);
+        if (currCode != null) {
+            curr = readBlobAsString(currCode);
         }
-        if (givenCom.getBlob().containsKey(fname)) {
-            given = Utils.readContentsAsString(Utils.join(blobFolder,
-                    givenCom.getBlob().get(fname)));
+        if (givenCode != null) {
+            given = readBlobAsString(givenCode);
         }
         String stringContent = head + curr + middle + given + end;
         Utils.writeContents(new File(fname), stringContent);
         return;
     }
-    public Commit findSplitPoint(TreeMap<Float, String> allCurrCommits,
-                                 TreeMap<Float, String> allGivenCommits)
-            throws IOException {
-        for (String comID: allCurrCommits.values()) {
-            if (allGivenCommits.containsValue(comID)) {
-                return Utils.readObject(Utils.join(commitFolder,
-                        comID), Commit.class);
-            }
+    /**Find the split point of two commits: their best common ancestor
+     * in the commit graph.
+     * @param currID is the current commit.
+     * @param givenID is the commit being merged in.
+     * @return the split point commit */
+    public Commit findSplitPoint(String currID, String givenID) {
+        int split = graph.mergeBase(graph.position(currID),
+                graph.position(givenID));
+        return readCommit(graph.idAt(split));
+    }
+    /**All the super helpful helper functions are below.
+     * @return  :) */
+    public Commit getCurrCommit() {
+        return readCommit(head());
+    }
+    /**Return the full id of the one commit whose id starts with
+     * COMID, or print why there is none and return null.
+     * @param comID is a full or abbreviated commit id
+     * @return the full id */
+    public String resolveCommitID(String comID) {
+        if (comID.length() == Utils.UID_LENGTH
+                && commitStore.contains(comID)) {
+            return comID;
+        }
+        List<String> found = commitIds.resolve(comID, 2);
+        if (found.isEmpty()) {
+            Utils.message("No commit with that id exists.");
+            return null;
+        }
+        if (found.size() > 1) {
+            Utils.message("Ambiguous commit id.");
+            return null;
         }
-        return new Commit(null, null, null);
+        return found.get(0);
     }
-    public void findSplitHelper(Commit commit, SortedMap<Float,
-            String> currList, Float dis) {
-        if (currList.containsKey(dis)) {
-            currList.put((float) (dis + .5), commit.getShaID());
-        } else {
-            currList.put(dis, commit.getShaID());
-        }
-        if (commit.getParentID() != null) {
-            if (commit.isHasParent2()) {
-                findSplitHelper(Utils.readObject(Utils.join(commitFolder,
-                                commit.getParentTwoId()), Commit.class),
-                        currList, (float) Math.round(dis + 1));
-                findSplitHelper(Utils.readObject(Utils.join(commitFolder,
-                                commit.getParentID()), Commit.class),
-                    currList, (float) Math.round(dis + 1));
-            } else {
-                findSplitHelper(Utils.readObject(Utils.join(commitFolder,
-                                commit.getParentID()), Commit.class),
-                        currList, (float) Math.round(dis + 1));
+    /**read a commit, loose or packed, or take it from the cache if it
+     * was read before.  It must not be modified.
+     * @param commitID
+     * @return the commit */
+    public Commit readCommit(String commitID) {
+        Commit result = commitCache.get(commitID);
+        if (result == null) {
+            result = Commit.read(commitStore, commitID);
+            commitCache.put(commitID, result);
+        }
+        return result;
+    }
+    /**Return the files of the commit COM, as a map from paths to blob
+     * codes.  The map is cached and must not be modified.
+     * @param com is a commit
+     * @return its files */
+    public HashMap<String, String> blobsOf(Commit com) {
+        if (com.getTreeID() == null) {
+            return com.getBlob();
+        }
+        HashMap<String, String> result = blobCache.get(com.getTreeID());
+        if (result == null) {
+            result = trees.flatten(com.getTreeID());
+            blobCache.put(com.getTreeID(), result);
+        }
+        return result;
+    }
+    /**Return the number of reads of commits and blob maps that were
+     * found in the caches.*/
+    public long cacheHits() {
+        return commitCache.hits() + blobCache.hits();
+    }
+    /**Return the number of reads of commits and blob maps that had to
+     * go to disk.*/
+    public long cacheMisses() {
+        return commitCache.misses() + blobCache.misses();
+    }
+    /**Return the SHA1 code of the root tree of the commit COM, building
+     * it for commits made before there were trees.
+     * @param com is a commit
+     * @return its tree */
+    public String treeOf(Commit com) {
+        if (com.getTreeID() == null) {
+            return trees.build(com.getBlob());
+        }
+        return com.getTreeID();
+    }
+    /**Return the paths of all the files under the working directory,
+     * outside .gitlet, with '/' between directories, sorted.*/
+    public List<String> workingFiles() {
+        List<String> result = new ArrayList<>();
+        workingFiles(cwd, "", result);
+        Collections.sort(result);
+        return result;
+    }
+    /**Add the files under DIR to RESULT, with PREFIX before their names.
+     * @param dir is a directory
+     * @param prefix is its path from the working directory
+     * @param result collects the paths */
+    private void workingFiles(File dir, String prefix, List<String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f: files) {
+            if (f.isFile()) {
+                result.add(prefix + f.getName());
+            } else if (f.isDirectory() && !f.getName().equals(".gitlet")) {
+                workingFiles(f, prefix + f.getName() + TreeStore.SEP, result);
             }
         }
     }
-    /**All the super helpful helper functions are below.
-     * @return  :) */
-    public Commit getCurrCommit() {
-        return Utils.readObject(Utils.join(commitFolder, _head), Commit.class);
+    /**Write the blob CODE to the working file FNAME, making its
+     * directories if needed.
+     * @param fname is a path in the working directory
+     * @param code is a blob code */
+    private void restore(String fname, String code) {
+        File file = Utils.join(cwd, fname);
+        file.getParentFile().mkdirs();
+        blobStore.copyTo(code, file);
+    }
+    /**Delete the working file FNAME, and then any of its directories
+     * left empty.
+     * @param fname is a path in the working directory */
+    private void deleteFile(String fname) {
+        File file = Utils.join(cwd, fname);
+        if (!file.isFile() || !file.delete()) {
+            return;
+        }
+        File dir = file.getParentFile();
+        while (!dir.equals(cwd) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+    /**read a blob, loose or packed.
+     * @param blobCode
+     * @return its contents as a String */
+    public String readBlobAsString(String blobCode) {
+        return new String(blobStore.read(blobCode), StandardCharsets.UTF_8);
     }
     /**save head.
      * @param commitID*/
@@ -675,42 +996,57 @@ public class
         File head = new File(branchesFolder, "HEAD");
         head.delete();
         Utils.writeContents(head, commitID);
+        _head = commitID;
     }
     /**change the branch name of the head; branching/BHEAD.
      * @param branchName */
     public void saveBHead(String branchName) {
         Utils.writeContents(Utils.join(branchesFolder, "BHEAD"), branchName);
+        bHead = branchName;
     }
     /**update branching/currentBranch contents to this new commit.
      * @param commitID*/
     public void updateCurrBranch(String commitID) {
-        Utils.writeContents(Utils.join(branchesFolder, bHead), commitID);
+        Utils.writeContents(Utils.join(branchesFolder, bHead()), commitID);
     }
     /**put new commit into the commit folder.
      * @param me */
     public void saveCommit(Commit me) {
         String comCode = me.getShaID();
-        Utils.writeObject(Utils.join(commitFolder, comCode), me);
-    }
-    public void saveStage() {
-        deleteFiles(stageFolder);
-        Utils.writeObject(Utils.join(stageFolder, "stage"), myStage);
+        if (!commitStore.contains(comCode)) {
+            commitStore.write(comCode, me.encode());
+            messageIndex.add(me);
+            commitIds.add(comCode);
+        }
+        graph.add(me);
     }
-    public void deleteFiles(File folder) {
-        for (File f: folder.listFiles()) {
-            f.delete();
+    /**Write back whatever the command changed and was not written yet:
+     * the stage and the working index.  A command that changed nothing
+     * writes nothing.*/
+    public void flush() {
+        if (stageDirty) {
+            myStage.save(stageFolder);
+            stageDirty = false;
         }
+        workIndex.save();
+    }
+    /**Note that the stage changed; its journal is appended to, or it is
+     * compacted, by flush.  A stage written by an older version is
+     * rewritten whole.*/
+    public void saveStage() {
+        stage();
+        stageDirty = true;
     }
 
     /**Ok... here comes the extra credit.
      * @param reName
      * @param dirName .*/
     public void addRemote(String reName, String dirName) {
-        if (remoteMap.containsKey(reName)) {
+        if (remotes().containsKey(reName)) {
             Utils.message("A remote with that name already exists.");
             return;
         }
-        remoteMap.put(reName, dirName.replace('/', File.separatorChar));
+        remotes().put(reName, dirName.replace('/', File.separatorChar));
         saveRemoteMap();
         return;
 
@@ -719,8 +1055,8 @@ public class
     /**Ok... here comes the extra credit.
      * @param reName .*/
     public void removeRemote(String reName) {
-        if (remoteMap.containsKey(reName)) {
-            remoteMap.remove(reName);
+        if (remotes().containsKey(reName)) {
+            remotes().remove(reName);
             saveRemoteMap();
             return;
         }
@@ -744,6 +1080,61 @@ public class
         merge(reName + File.separator + branch);
     }
 
+    /**Move all the loose blobs, trees and commits into packs.*/
+    public void repack() {
+        int blobs = blobStore.repack();
+        int commits = commitStore.repack();
+        int treeCount = treeStore.repack();
+        Utils.message("Packed %d blobs, %d trees and %d commits.", blobs,
+                treeCount, commits);
+    }
+
+    /**Remove the blobs, trees and commits that no branch, HEAD or the
+     * stage can reach, except those written in the grace period, and
+     * report the bytes freed.  The message index is built again on the
+     * next find if commits were removed.*/
+    public void gc() {
+        List<String> roots = new ArrayList<>();
+        for (String name : Utils.plainFilenamesIn(branchesFolder)) {
+            if (!name.equals("BHEAD")) {
+                roots.add(Utils.readContentsAsString(
+                        new File(branchesFolder, name)));
+            }
+        }
+        GarbageCollector collector = new GarbageCollector(blobStore,
+                treeStore, commitStore, graph);
+        Trace.phase("mark");
+        collector.mark(roots, stage().getAddList().values());
+        Trace.phase("sweep");
+        long[] removed = collector.sweep();
+        if (removed[2] > 0) {
+            messageIndex.clear();
+            commitIds.clear();
+        }
+        Utils.message("Removed %d blobs, %d trees and %d commits, "
+                + "freeing %d bytes.", removed[0], removed[1], removed[2],
+                removed[3]);
+    }
+
+    /**Rewrite every commit and the stage that were written with Java
+     * serialization in the binary encoding, keeping their SHA1 codes.
+     * Commits made before there were trees are given one.*/
+    public void migrate() {
+        int count = 0;
+        for (String id: commitStore.list()) {
+            byte[] bytes = commitStore.read(id);
+            if (Commit.isEncoded(bytes)) {
+                continue;
+            }
+            Commit old = Commit.read(commitStore, id);
+            old.migrateTo(treeOf(old));
+            commitStore.write(id, old.encode());
+            count += 1;
+        }
+        saveStage();
+        Utils.message("Migrated %d commits.", count);
+    }
+
     public void saveRemoteMap() {
         Utils.writeObject(_remote, remoteMap);
     }
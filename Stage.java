@@ -1,48 +1,328 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
+/** The files staged for addition and for removal.  On disk, in the
+ *  staging folder, it is a snapshot, the file stage, and a journal of the
+ *  changes made since, the file journal, which is only ever appended to.
+ *  Reading the stage replays the journal over the snapshot; a record cut
+ *  short by a crash is dropped.  The snapshot is rewritten, and the
+ *  journal started over, after the stage is cleared and when the journal
+ *  grows bigger than the snapshot.  Both carry a generation number, so a
+ *  journal left behind by a crash in the middle of that is ignored.
+ */
 public class Stage implements Serializable {
 
+    /**Pinned to the value Java computed for the original class, so that
+     * stages written before there was an encoding can still be read.*/
+    private static final long serialVersionUID = 2720551544043450494L;
+
+    /**The fields as Java serialization wrote them, before reList was a
+     * set.*/
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("addList", HashMap.class),
+        new ObjectStreamField("reList", ArrayList.class),
+    };
+
+    /**First byte of a stage file.  Stages written with Java
+     * serialization, before there was an encoding, start with 0xAC.*/
+    static final byte FORMAT = 'S';
+    /**Version of the encoding.  Version 1 had no generation number.*/
+    static final byte VERSION = 2;
+    /**First byte of a journal.*/
+    static final byte JOURNAL = 'J';
+    /**Journal record: file staged for addition, with its blob code.*/
+    static final byte ADD = 'A';
+    /**Journal record: file no longer staged for addition.*/
+    static final byte UNADD = 'a';
+    /**Journal record: file staged for removal.*/
+    static final byte REMOVE = 'R';
+    /**Journal record: file no longer staged for removal.*/
+    static final byte UNREMOVE = 'r';
+    /**Bytes the journal may always grow to before the snapshot is
+     * rewritten.*/
+    static final long COMPACT = 64 << 10;
+
     /** Hashmap with file name as key and blob hash code as value.*/
     private HashMap<String, String> addList;
-    /**Array list for removal.*/
-    private ArrayList<String> reList;
+    /**Set of the files staged for removal, in the order they were.*/
+    private LinkedHashSet<String> reList;
+
+    /**Journal records not written yet.*/
+    private transient ByteArrayOutputStream pending;
+    /**Whether the next save must rewrite the snapshot.*/
+    private transient boolean compact;
+    /**Generation number of the snapshot.*/
+    private transient long generation;
+    /**Bytes in the snapshot.*/
+    private transient long snapshotLength;
+    /**Bytes in the journal, 0 if there is none for this generation.*/
+    private transient long journalLength;
 
 
     public Stage() {
         addList = new HashMap<String, String>();
-        reList = new ArrayList();
+        reList = new LinkedHashSet<>();
+        compact = true;
     }
 
     public void addToAddList(String fname, String bcode) {
         addList.put(fname, bcode);
+        log(ADD, fname, bcode);
     }
 
     public void addToReList(String fname) {
         reList.add(fname);
+        log(REMOVE, fname);
     }
 
     public void deleteFromAddList(String fname) {
-        addList.remove(fname);
+        if (addList.remove(fname) != null) {
+            log(UNADD, fname);
+        }
     }
 
     public void deleteFromReList(String fname) {
-        reList.remove(fname);
+        if (reList.remove(fname)) {
+            log(UNREMOVE, fname);
+        }
     }
 
 
     public HashMap<String, String> getAddList() {
         return addList;
     }
-    public ArrayList<String> getReList() {
+    public Set<String> getReList() {
         return reList;
     }
     public void clearAll() {
         addList = new HashMap<>();
-        reList = new ArrayList();
+        reList = new LinkedHashSet<>();
+        pending = null;
+        compact = true;
     }
 
+    /**Add a journal record of OP on the strings ARGS to PENDING.
+     * @param op is the kind of record.
+     * @param args are the file name and, for ADD, the blob code. */
+    private void log(byte op, String... args) {
+        if (compact) {
+            return;
+        }
+        if (pending == null) {
+            pending = new ByteArrayOutputStream();
+        }
+        try {
+            DataOutputStream out = new DataOutputStream(pending);
+            out.writeByte(op);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**Write what changed since the stage was read or last saved to
+     * FOLDER: the pending records at the end of the journal, or a new
+     * snapshot if one is due.  Nothing is written if nothing changed.
+     * @param folder is the staging folder. */
+    public void save(File folder) {
+        int size = pending == null ? 0 : pending.size();
+        if (compact || journalLength + size > Math.max(COMPACT,
+                snapshotLength)) {
+            snapshot(folder);
+            return;
+        }
+        if (size == 0) {
+            return;
+        }
+        File journal = Utils.join(folder, "journal");
+        Trace.countWrite();
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(journal, journalLength > 0))) {
+            if (journalLength == 0) {
+                out.writeByte(JOURNAL);
+                out.writeLong(generation);
+            }
+            pending.writeTo(out);
+            out.flush();
+            journalLength = journal.length();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        pending = null;
+    }
+
+    /**Write the whole stage as a new snapshot in FOLDER, with the next
+     * generation number, and remove the journal.
+     * @param folder is the staging folder. */
+    private void snapshot(File folder) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeByte(VERSION);
+            out.writeLong(generation + 1);
+            out.writeInt(addList.size());
+            for (Map.Entry<String, String> e : addList.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+            out.writeInt(reList.size());
+            for (String name : reList) {
+                out.writeUTF(name);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        File snapshot = Utils.join(folder, "stage");
+        File tmp = Utils.join(folder, "stage.tmp");
+        Utils.writeContents(tmp, bytes.toByteArray());
+        try {
+            Files.move(tmp.toPath(), snapshot.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.join(folder, "journal").delete();
+        generation += 1;
+        snapshotLength = bytes.size();
+        journalLength = 0;
+        pending = null;
+        compact = false;
+    }
+
+    /**Return the stage kept in FOLDER: its snapshot, whether written by
+     * snapshot, by an older version or with Java serialization, with the
+     * journal replayed over it.  A journal whose last record was cut
+     * short is cut back to its last whole record.
+     * @param folder is the staging folder. */
+    public static Stage read(File folder) {
+        File snapshot = Utils.join(folder, "stage");
+        if (!snapshot.exists()) {
+            return new Stage();
+        }
+        byte[] bytes = Utils.readContents(snapshot);
+        if (bytes.length == 0 || bytes[0] != FORMAT) {
+            return Utils.readObject(snapshot, Stage.class);
+        }
+        Stage result = new Stage();
+        byte version;
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes))) {
+            in.readByte();
+            version = in.readByte();
+            if (version == VERSION) {
+                result.generation = in.readLong();
+            } else if (version != 1) {
+                throw new IllegalArgumentException("bad stage");
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i += 1) {
+                result.addList.put(in.readUTF(), in.readUTF());
+            }
+            n = in.readInt();
+            for (int i = 0; i < n; i += 1) {
+                result.reList.add(in.readUTF());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        result.snapshotLength = bytes.length;
+        result.compact = version != VERSION;
+        result.replay(Utils.join(folder, "journal"));
+        return result;
+    }
+
+    /**Apply the records of JOURNAL, if it belongs to this generation.
+     * @param journal is the journal file. */
+    private void replay(File journal) {
+        if (!journal.exists() || compact) {
+            return;
+        }
+        byte[] bytes = Utils.readContents(journal);
+        ByteArrayInputStream buf = new ByteArrayInputStream(bytes);
+        DataInputStream in = new DataInputStream(buf);
+        long good = 0;
+        try {
+            if (in.readByte() != JOURNAL || in.readLong() != generation) {
+                return;
+            }
+            good = bytes.length - buf.available();
+            while (buf.available() > 0) {
+                byte op = in.readByte();
+                String name = in.readUTF();
+                if (op == ADD) {
+                    addList.put(name, in.readUTF());
+                } else if (op == UNADD) {
+                    addList.remove(name);
+                } else if (op == REMOVE) {
+                    reList.add(name);
+                } else if (op == UNREMOVE) {
+                    reList.remove(name);
+                } else {
+                    break;
+                }
+                good = bytes.length - buf.available();
+            }
+        } catch (EOFException | UTFDataFormatException excp) {
+            if (good == 0) {
+                return;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (good < bytes.length) {
+            try (RandomAccessFile f = new RandomAccessFile(journal, "rw")) {
+                f.setLength(good);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        journalLength = good;
+    }
+
+    /**Write the stage with Java serialization as it was written when
+     * reList was a list.
+     * @param out is the stream. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("addList", addList);
+        fields.put("reList", new ArrayList<>(reList));
+        out.writeFields();
+    }
+
+    /**Read a stage written with Java serialization, when reList was a
+     * list.
+     * @param in is the stream. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        addList = (HashMap<String, String>) fields.get("addList", null);
+        reList = new LinkedHashSet<>(
+                (ArrayList<String>) fields.get("reList", null));
+        compact = true;
+    }
 }
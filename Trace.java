@@ -0,0 +1,394 @@
+package gitlet;
+
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Counts what each command does.  The number of files opened for
+ *  reading and for writing is always counted.  The I/O primitives of
+ *  Utils, and the reads, writes and copies of objects in ObjectStore and
+ *  PackFile, also report each call, with its bytes, as a JFR event.
+ *  Unless a summary or a flight recording of these events is on, a call
+ *  makes no event and costs only a test of a flag.  Repo divides a
+ *  command into phases, each lasting until the next one starts, and
+ *  each phase is a JFR event too.
+ *
+ *  With -Dgitlet.trace, or the environment variable GITLET_TRACE, set
+ *  to a file name, each command also adds up the calls, bytes and
+ *  nanoseconds of every primitive in every phase, and appends them to
+ *  the file at the end of the command as one line of JSON.  With
+ *  "stderr", "1" or "true" the line goes to standard error.
+ *  @author Claire Ding
+ */
+public class Trace {
+
+    /** Where summaries go, or null if tracing is off. */
+    static final String TARGET = target();
+    /** Whether summaries are made. */
+    static final boolean ON = TARGET != null;
+
+    /** The I/O primitives that are traced. */
+    enum Op {
+        /** Utils.readContents. */
+        READ("read"),
+        /** Utils.writeContents. */
+        WRITE("write"),
+        /** Utils.readObject. */
+        READ_OBJECT("readObject"),
+        /** Utils.writeObject, which includes a WRITE. */
+        WRITE_OBJECT("writeObject"),
+        /** Utils.sha1, of bytes or of a file. */
+        SHA1("sha1"),
+        /** Utils.plainFilenamesIn. */
+        LIST("list"),
+        /** Stored bytes of an object read from a loose file or a pack,
+         *  counted when the stream is closed. */
+        OBJECT_READ("objectRead"),
+        /** An object, or a pack, written by ObjectStore or PackFile
+         *  other than through Utils.writeContents. */
+        OBJECT_WRITE("objectWrite"),
+        /** A file written from an object by file channels: checkout,
+         *  reset and merge restoring files. */
+        COPY("copy");
+
+        /** Name in summaries and events. */
+        private final String label;
+
+        /** An Op named LABEL.
+         *  @param label is its name. */
+        Op(String label) {
+            this.label = label;
+        }
+    }
+
+    /** JFR event of one call of an I/O primitive. */
+    @Name("gitlet.IO")
+    @Label("Gitlet I/O")
+    @Category("Gitlet")
+    @Description("A call of an I/O primitive")
+    static class IoEvent extends Event {
+        /** The primitive. */
+        @Label("Operation")
+        String op;
+        /** The phase of the command it was called in. */
+        @Label("Phase")
+        String phase;
+        /** Bytes read, written or hashed. */
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        /** System.nanoTime at the start, for the summary. */
+        transient long start;
+    }
+
+    /** JFR event of one phase of a command. */
+    @Name("gitlet.Phase")
+    @Label("Gitlet Phase")
+    @Category("Gitlet")
+    static class PhaseEvent extends Event {
+        /** The command. */
+        @Label("Command")
+        String command;
+        /** The phase. */
+        @Label("Phase")
+        String phase;
+    }
+
+    /** The type of IoEvent, enabled while a flight recording wants it. */
+    private static final EventType IO_EVENTS =
+            EventType.getEventType(IoEvent.class);
+    /** Files opened for reading in this command. */
+    private static final AtomicLong FILES_READ = new AtomicLong();
+    /** Files opened for writing in this command. */
+    private static final AtomicLong FILES_WRITTEN = new AtomicLong();
+
+    /** Name of the command being run. */
+    private static String command = "";
+    /** Words of the command being run. */
+    private static String[] args = {};
+    /** The phase being run. */
+    private static volatile String phase = "";
+    /** Event of the phase being run. */
+    private static PhaseEvent phaseEvent;
+    /** System.nanoTime when the command and the phase started. */
+    private static long commandStart, phaseStart;
+    /** For each phase run so far in this command, in order: its
+     *  nanoseconds, then the calls, bytes and nanoseconds of each Op. */
+    private static final Map<String, long[]> STATS = new LinkedHashMap<>();
+
+    /** Return the summary target named by -Dgitlet.trace or
+     *  GITLET_TRACE, or null. */
+    private static String target() {
+        String result = System.getProperty("gitlet.trace");
+        if (result == null) {
+            result = System.getenv("GITLET_TRACE");
+        }
+        if (result == null || result.isEmpty() || result.equals("0")
+                || result.equals("false")) {
+            return null;
+        }
+        return result;
+    }
+
+    /** Start tracing the command ARGS, forgetting what was counted
+     *  before.
+     *  @param words is the command and its operands. */
+    static synchronized void command(String... words) {
+        args = words;
+        command = words.length > 0 ? words[0] : "";
+        FILES_READ.set(0);
+        FILES_WRITTEN.set(0);
+        STATS.clear();
+        commandStart = System.nanoTime();
+        phase(command);
+    }
+
+    /** End the phase being run and start the one named NAME.
+     *  @param name is the name of the new phase. */
+    static synchronized void phase(String name) {
+        endPhase();
+        phase = name;
+        phaseStart = System.nanoTime();
+        phaseEvent = new PhaseEvent();
+        phaseEvent.begin();
+    }
+
+    /** End the phase being run. */
+    private static void endPhase() {
+        if (phaseEvent == null) {
+            return;
+        }
+        phaseEvent.end();
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.command = command;
+            phaseEvent.phase = phase;
+            phaseEvent.commit();
+        }
+        phaseEvent = null;
+        if (ON) {
+            stats(phase)[0] += System.nanoTime() - phaseStart;
+        }
+    }
+
+    /** End the command being run and, if tracing is on, write its
+     *  summary. */
+    static synchronized void finish() {
+        endPhase();
+        if (!ON) {
+            return;
+        }
+        String line = summary(System.nanoTime() - commandStart);
+        if (TARGET.equals("stderr") || TARGET.equals("1")
+                || TARGET.equals("true")) {
+            PrintStream err = System.err;
+            err.println(line);
+            err.flush();
+            return;
+        }
+        try (Writer out = new OutputStreamWriter(
+                new FileOutputStream(TARGET, true), StandardCharsets.UTF_8)) {
+            out.write(line + System.lineSeparator());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the statistics of the phase NAME, made if needed.
+     *  @param name is a phase. */
+    private static long[] stats(String name) {
+        return STATS.computeIfAbsent(name,
+                k -> new long[1 + 3 * Op.values().length]);
+    }
+
+    /** Return an event for a call of an I/O primitive, started, or null
+     *  if neither a summary nor a flight recording wants it, so that an
+     *  untraced call costs one test. */
+    static IoEvent begin() {
+        if (!ON && !IO_EVENTS.isEnabled()) {
+            return null;
+        }
+        IoEvent result = new IoEvent();
+        result.begin();
+        if (ON) {
+            result.start = System.nanoTime();
+        }
+        return result;
+    }
+
+    /** End EVENT, a call of OP on BYTES bytes, and count it.
+     *  @param event is what begin returned, null for nothing to do.
+     *  @param op is the primitive.
+     *  @param bytes is the number of bytes read, written or hashed. */
+    static void end(IoEvent event, Op op, long bytes) {
+        if (event == null) {
+            return;
+        }
+        end(event, op, bytes, ON ? System.nanoTime() - event.start : 0);
+    }
+
+    /** End EVENT, a call of OP on BYTES bytes that took NANOS
+     *  nanoseconds, and count it.
+     *  @param event is what begin returned.
+     *  @param op is the primitive.
+     *  @param bytes is the number of bytes read, written or hashed.
+     *  @param nanos is the time the call took. */
+    private static void end(IoEvent event, Op op, long bytes, long nanos) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.op = op.label;
+            event.phase = phase;
+            event.bytes = bytes;
+            event.commit();
+        }
+        if (ON) {
+            synchronized (Trace.class) {
+                long[] s = stats(phase);
+                int i = 1 + 3 * op.ordinal();
+                s[i] += 1;
+                s[i + 1] += bytes;
+                s[i + 2] += nanos;
+            }
+        }
+    }
+
+    /** Return IN, counting the bytes read from it and the time spent in
+     *  its reads as one call of OP when it is closed.  IN itself if
+     *  neither a summary nor a flight recording wants it.
+     *  @param in is a stream over a file.
+     *  @param op is what the stream is read for. */
+    static InputStream reading(InputStream in, Op op) {
+        IoEvent event = begin();
+        if (event == null) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            /** Bytes read so far. */
+            private long bytes;
+            /** Nanoseconds spent reading so far. */
+            private long nanos;
+            /** Whether the call was counted. */
+            private boolean closed;
+
+            @Override
+            public int read() throws IOException {
+                long start = System.nanoTime();
+                int c = super.read();
+                nanos += System.nanoTime() - start;
+                bytes += c < 0 ? 0 : 1;
+                return c;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                long start = System.nanoTime();
+                int n = super.read(b, off, len);
+                nanos += System.nanoTime() - start;
+                bytes += Math.max(n, 0);
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                if (!closed) {
+                    closed = true;
+                    end(event, op, bytes, nanos);
+                }
+            }
+        };
+    }
+
+    /** Count one file opened for reading. */
+    static void countRead() {
+        FILES_READ.incrementAndGet();
+    }
+
+    /** Count one file opened for writing. */
+    static void countWrite() {
+        FILES_WRITTEN.incrementAndGet();
+    }
+
+    /** Return the number of files opened for reading in this command. */
+    static long filesRead() {
+        return FILES_READ.get();
+    }
+
+    /** Return the number of files opened for writing in this command. */
+    static long filesWritten() {
+        return FILES_WRITTEN.get();
+    }
+
+    /** Return the summary of the command, which took NANOS nanoseconds,
+     *  as one line of JSON.
+     *  @param nanos is the time the command took. */
+    private static String summary(long nanos) {
+        StringBuilder out = new StringBuilder("{\"command\":");
+        quote(out, command);
+        out.append(",\"args\":[");
+        for (int i = 0; i < args.length; i += 1) {
+            out.append(i == 0 ? "" : ",");
+            quote(out, args[i]);
+        }
+        out.append("],\"nanos\":").append(nanos)
+                .append(",\"filesRead\":").append(filesRead())
+                .append(",\"filesWritten\":").append(filesWritten())
+                .append(",\"phases\":[");
+        boolean first = true;
+        for (Map.Entry<String, long[]> e : STATS.entrySet()) {
+            long[] s = e.getValue();
+            out.append(first ? "{\"phase\":" : ",{\"phase\":");
+            first = false;
+            quote(out, e.getKey());
+            out.append(",\"nanos\":").append(s[0]).append(",\"ops\":{");
+            boolean firstOp = true;
+            for (Op op : Op.values()) {
+                int i = 1 + 3 * op.ordinal();
+                if (s[i] == 0) {
+                    continue;
+                }
+                out.append(firstOp ? "\"" : ",\"").append(op.label)
+                        .append("\":{\"calls\":").append(s[i])
+                        .append(",\"bytes\":").append(s[i + 1])
+                        .append(",\"nanos\":").append(s[i + 2])
+                        .append("}");
+                firstOp = false;
+            }
+            out.append("}}");
+        }
+        return out.append("]}").toString();
+    }
+
+    /** Append S to OUT as a JSON string.
+     *  @param out is the JSON being built.
+     *  @param s is the string. */
+    private static void quote(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < ' ') {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,212 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Directory trees of the commits.  A tree is one directory: a sorted
+ *  map from entry names to SHA1 codes, where a name ending in SEP is a
+ *  subdirectory whose code is that of another tree, and any other name
+ *  is a file whose code is that of its blob.  Trees are stored in an
+ *  ObjectStore under the SHA1 code of their contents, so two commits
+ *  that share a directory unchanged share its tree, and comparing two
+ *  directories is comparing two codes.
+ *  @author Claire Ding
+ */
+public class TreeStore implements Serializable {
+
+    /** Separator of the parts of a path, and mark of a subtree entry. */
+    static final String SEP = "/";
+
+    /** Where the trees are stored. */
+    private ObjectStore store;
+    /** Trees already read, by SHA1 code. */
+    private transient HashMap<String, TreeMap<String, String>> cache;
+
+    /** The trees kept in STORE.
+     *  @param store is the tree object store. */
+    public TreeStore(ObjectStore store) {
+        this.store = store;
+    }
+
+    /** Return the entries of the tree ID.  Trees never change, so the
+     *  result is cached and must not be modified.
+     *  @param id is the SHA1 code of a tree. */
+    public TreeMap<String, String> entries(String id) {
+        if (cache == null) {
+            cache = new HashMap<>();
+        }
+        TreeMap<String, String> result = cache.get(id);
+        if (result == null) {
+            result = decode(store.read(id));
+            cache.put(id, result);
+        }
+        return result;
+    }
+
+    /** Return the entries of the tree stored as BYTES.
+     *  @param bytes is the content of a tree object. */
+    static TreeMap<String, String> decode(byte[] bytes) {
+        TreeMap<String, String> result = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes))) {
+            int n = in.readInt();
+            for (int i = 0; i < n; i += 1) {
+                result.put(in.readUTF(), in.readUTF());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Store the tree ENTRIES, if it is not stored yet, and return its
+     *  SHA1 code.
+     *  @param entries is one directory. */
+    public String write(TreeMap<String, String> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(entries.size());
+            for (Map.Entry<String, String> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String id = Utils.sha1("tree", bytes.toByteArray());
+        if (!store.touch(id)) {
+            store.mkdirs();
+            store.write(id, bytes.toByteArray());
+        }
+        if (cache != null) {
+            cache.put(id, new TreeMap<>(entries));
+        }
+        return id;
+    }
+
+    /** Return the SHA1 code of the tree holding the files of FLAT, a map
+     *  from paths to blob codes.
+     *  @param flat is every file of a commit. */
+    public String build(Map<String, String> flat) {
+        return update(write(new TreeMap<>()), flat);
+    }
+
+    /** Return the SHA1 code of the tree ROOT with CHANGES made to it:
+     *  each path in CHANGES is set to its blob code, or removed if the
+     *  code is null.  Only the directories on the changed paths are read
+     *  and written; every other subtree keeps its code.  Directories left
+     *  empty are removed.
+     *  @param root is the SHA1 code of a tree.
+     *  @param changes maps paths to blob codes or null. */
+    public String update(String root, Map<String, String> changes) {
+        TreeMap<String, String> entries = new TreeMap<>(entries(root));
+        TreeMap<String, Map<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> c : changes.entrySet()) {
+            String path = c.getKey();
+            int slash = path.indexOf(SEP);
+            if (slash < 0) {
+                if (c.getValue() == null) {
+                    entries.remove(path);
+                } else {
+                    entries.put(path, c.getValue());
+                }
+            } else {
+                below.computeIfAbsent(path.substring(0, slash + 1),
+                        k -> new HashMap<>())
+                        .put(path.substring(slash + 1), c.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> d : below.entrySet()) {
+            String sub = entries.get(d.getKey());
+            if (sub == null) {
+                sub = write(new TreeMap<>());
+            }
+            String updated = update(sub, d.getValue());
+            if (entries(updated).isEmpty()) {
+                entries.remove(d.getKey());
+            } else {
+                entries.put(d.getKey(), updated);
+            }
+        }
+        return write(entries);
+    }
+
+    /** Return every file of the tree ID, as a map from paths to blob
+     *  codes.
+     *  @param id is the SHA1 code of a tree. */
+    public HashMap<String, String> flatten(String id) {
+        HashMap<String, String> result = new HashMap<>();
+        flatten(id, "", result);
+        return result;
+    }
+
+    /** Add the files of the tree ID to RESULT, with PREFIX before their
+     *  paths.
+     *  @param id is the SHA1 code of a tree.
+     *  @param prefix is the path of the tree.
+     *  @param result collects the files. */
+    private void flatten(String id, String prefix,
+                         Map<String, String> result) {
+        for (Map.Entry<String, String> e : entries(id).entrySet()) {
+            if (e.getKey().endsWith(SEP)) {
+                flatten(e.getValue(), prefix + e.getKey(), result);
+            } else {
+                result.put(prefix + e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** Return the files that differ between the trees A and B, as a map
+     *  from paths to their blob codes in B, null for files only in A.
+     *  Subtrees with the same code in both are skipped without being
+     *  read.
+     *  @param a is the SHA1 code of the old tree.
+     *  @param b is the SHA1 code of the new tree. */
+    public TreeMap<String, String> diff(String a, String b) {
+        TreeMap<String, String> result = new TreeMap<>();
+        diff(a, b, "", result);
+        return result;
+    }
+
+    /** Add the differences between the trees A and B to RESULT, with
+     *  PREFIX before their paths.  A or B may be null for a directory
+     *  that is missing on that side.
+     *  @param a is the SHA1 code of the old tree, or null.
+     *  @param b is the SHA1 code of the new tree, or null.
+     *  @param prefix is the path of the trees.
+     *  @param result collects the differences. */
+    private void diff(String a, String b, String prefix,
+                      Map<String, String> result) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        Map<String, String> old = a == null ? new TreeMap<>() : entries(a);
+        Map<String, String> now = b == null ? new TreeMap<>() : entries(b);
+        for (Map.Entry<String, String> e : old.entrySet()) {
+            String name = e.getKey();
+            if (name.endsWith(SEP)) {
+                diff(e.getValue(), now.get(name), prefix + name, result);
+            } else if (!e.getValue().equals(now.get(name))) {
+                result.put(prefix + name, now.get(name));
+            }
+        }
+        for (Map.Entry<String, String> e : now.entrySet()) {
+            String name = e.getKey();
+            if (old.containsKey(name)) {
+                continue;
+            }
+            if (name.endsWith(SEP)) {
+                diff(null, e.getValue(), prefix + name, result);
+            } else {
+                result.put(prefix + name, e.getValue());
+            }
+        }
+    }
+}
@@ -11,8 +11,11 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -34,22 +37,25 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
+        Trace.IoEvent event = Trace.begin();
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long bytes = 0;
             for (Object val : vals) {
+                byte[] b;
                 if (val instanceof byte[]) {
-                    md.update((byte[]) val);
+                    b = (byte[]) val;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    b = ((String) val).getBytes(StandardCharsets.UTF_8);
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
+                md.update(b);
+                bytes += b.length;
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            String result = toHex(md.digest());
+            Trace.end(event, Trace.Op.SHA1, bytes);
+            return result;
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -61,6 +67,59 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the SHA-1 hash of PREFIX followed by the contents of FILE,
+     *  the same value as sha1(PREFIX, readContents(FILE)), but reading FILE
+     *  in CHUNK_SIZE pieces so that memory use does not depend on its
+     *  size.  Throws IllegalArgumentException in case of problems. */
+    static String sha1(String prefix, File file) {
+        try {
+            return sha1(prefix, file, MessageDigest.getInstance("SHA-1"),
+                    ByteBuffer.allocate(CHUNK_SIZE));
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** As sha1(PREFIX, FILE), but using the SHA-1 digest MD and the
+     *  buffer BUF, so that a thread hashing many files can reuse them.
+     *  MD is reset first. */
+    static String sha1(String prefix, File file, MessageDigest md,
+                       ByteBuffer buf) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        Trace.IoEvent event = Trace.begin();
+        Trace.countRead();
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            md.reset();
+            byte[] p = prefix.getBytes(StandardCharsets.UTF_8);
+            md.update(p);
+            long bytes = p.length;
+            buf.clear();
+            while (in.read(buf) != -1) {
+                buf.flip();
+                bytes += buf.remaining();
+                md.update(buf);
+                buf.clear();
+            }
+            String result = toHex(md.digest());
+            Trace.end(event, Trace.Op.SHA1, bytes);
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns DIGEST as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] digest) {
+        Formatter result = new Formatter();
+        for (byte b : digest) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -95,8 +154,12 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        Trace.IoEvent event = Trace.begin();
+        Trace.countRead();
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] result = Files.readAllBytes(file.toPath());
+            Trace.end(event, Trace.Op.READ, result.length);
+            return result;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -119,30 +182,40 @@ class Utils {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
+            Trace.IoEvent event = Trace.begin();
+            Trace.countWrite();
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            long bytes = 0;
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] b = obj instanceof byte[] ? (byte[]) obj
+                        : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(b);
+                bytes += b.length;
             }
             str.close();
+            Trace.end(event, Trace.Op.WRITE, bytes);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
+    /** Size of the buffer used when hashing or copying a file
+     *  piece by piece. */
+    static final int CHUNK_SIZE = 1 << 16;
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        Trace.IoEvent event = Trace.begin();
+        Trace.countRead();
         try {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.end(event, Trace.Op.READ_OBJECT, file.length());
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -152,7 +225,10 @@ class Utils {
 
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        Trace.IoEvent event = Trace.begin();
+        byte[] bytes = serialize(obj);
+        writeContents(file, bytes);
+        Trace.end(event, Trace.Op.WRITE_OBJECT, bytes.length);
     }
 
     /* DIRECTORIES */
@@ -170,7 +246,9 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        Trace.IoEvent event = Trace.begin();
         String[] files = dir.list(PLAIN_FILES);
+        Trace.end(event, Trace.Op.LIST, 0);
         if (files == null) {
             return null;
         } else {
@@ -0,0 +1,257 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/** What gitlet last saw of each file in the working directory: its size,
+ *  modification time and inode when it was hashed, and the SHA1 code it
+ *  had.  A file whose stat data still match is known to have the same
+ *  code without being read again.  A file modified within SLACK of
+ *  being hashed is not trusted, because a later change in the same
+ *  clock tick could leave its stat data the same.
+ *  @author Claire Ding
+ */
+public class WorkingIndex implements Serializable {
+
+    /** Magic number at the start of the index file. */
+    static final int MAGIC = 0x47494e58;
+    /** Version of the file format. */
+    static final int VERSION = 1;
+    /** Milliseconds a file must be older than its entry to be trusted. */
+    static final long SLACK = 2000;
+
+    /** What is known about one file. */
+    static class Entry implements Serializable {
+        /** Size in bytes. */
+        private long size;
+        /** Modification time in milliseconds. */
+        private long mtime;
+        /** Inode number, or another key of the file if there is none. */
+        private long inode;
+        /** When the file was hashed, in milliseconds. */
+        private long recorded;
+        /** SHA1 code of the file as a blob. */
+        private String code;
+    }
+
+    /** The index file. */
+    private File file;
+    /** Entries by file name, loaded on first use. */
+    private transient HashMap<String, Entry> entries;
+    /** Whether ENTRIES changed since they were loaded. */
+    private transient boolean dirty;
+
+    /** The index kept in FILE.
+     *  @param file is the index file. */
+    public WorkingIndex(File file) {
+        this.file = file;
+    }
+
+    /** Return the blob codes of the working files NAMES, leaving out
+     *  the ones that do not exist.  A file is only read if its stat data
+     *  changed since it was last hashed.  Stat calls and the
+     *  hashing of changed files are spread over the fork-join pool,
+     *  each worker with its own digest and buffer; the index itself is
+     *  only updated afterwards, in the order of NAMES.
+     *  @param names are file names. */
+    public Map<String, String> hashAll(List<String> names) {
+        load();
+        List<Entry> fresh = names.parallelStream().map(name -> {
+            Entry stat = stat(name);
+            Entry old = entries.get(name);
+            if (stat == null) {
+                return null;
+            }
+            if (unchanged(old, stat)) {
+                return old;
+            }
+            stat.code = Utils.sha1(name, new File(name), DIGEST.get(),
+                    BUFFER.get());
+            return stat;
+        }).collect(Collectors.toList());
+        HashMap<String, String> result = new HashMap<>();
+        for (int i = 0; i < names.size(); i += 1) {
+            String name = names.get(i);
+            Entry e = fresh.get(i);
+            if (e == null) {
+                remove(name);
+                continue;
+            }
+            if (entries.put(name, e) != e) {
+                dirty = true;
+            }
+            result.put(name, e.code);
+        }
+        return result;
+    }
+
+    /** A SHA-1 digest for each thread hashing files. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                        "System does not support SHA-1");
+            }
+        });
+
+    /** A read buffer for each thread hashing files. */
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+        ThreadLocal.withInitial(() ->
+                ByteBuffer.allocateDirect(Utils.CHUNK_SIZE));
+
+    /** Return whether the file described by OLD, when it was hashed, is
+     *  known to be unchanged now that its stat data are STAT.
+     *  @param old is the entry in the index, or null.
+     *  @param stat is what stat says now. */
+    private static boolean unchanged(Entry old, Entry stat) {
+        return old != null && old.size == stat.size
+                && old.mtime == stat.mtime && old.inode == stat.inode
+                && old.mtime + SLACK < old.recorded;
+    }
+
+    /** Note that the working file NAME now has blob code CODE, as just
+     *  written by checkout.
+     *  @param name is the file name.
+     *  @param code is its blob code. */
+    public void record(String name, String code) {
+        load();
+        Entry stat = stat(name);
+        if (stat != null) {
+            stat.code = code;
+            entries.put(name, stat);
+            dirty = true;
+        }
+    }
+
+    /** Forget the file NAME.
+     *  @param name is the file name. */
+    public void remove(String name) {
+        load();
+        if (entries.remove(name) != null) {
+            dirty = true;
+        }
+    }
+
+    /** Write the index back if it changed. */
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        Trace.countWrite();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath()),
+                        Utils.CHUNK_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry v = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(v.size);
+                out.writeLong(v.mtime);
+                out.writeLong(v.inode);
+                out.writeLong(v.recorded);
+                out.writeUTF(v.code);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dirty = false;
+    }
+
+    /** Return a new entry with the stat data of NAME and the current
+     *  time, or null if NAME is not a plain file.
+     *  @param name is the file name. */
+    static Entry stat(String name) {
+        Path path = new File(name).toPath();
+        Entry result = new Entry();
+        result.recorded = System.currentTimeMillis();
+        try {
+            try {
+                Map<String, Object> attrs = Files.readAttributes(path,
+                        "unix:size,lastModifiedTime,ino,isRegularFile",
+                        LinkOption.NOFOLLOW_LINKS);
+                if (!(Boolean) attrs.get("isRegularFile")) {
+                    return null;
+                }
+                result.size = (Long) attrs.get("size");
+                result.mtime = ((FileTime) attrs.get("lastModifiedTime"))
+                        .toMillis();
+                result.inode = (Long) attrs.get("ino");
+            } catch (UnsupportedOperationException excp) {
+                BasicFileAttributes attrs = Files.readAttributes(path,
+                        BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    return null;
+                }
+                result.size = attrs.size();
+                result.mtime = attrs.lastModifiedTime().toMillis();
+                result.inode = attrs.fileKey() == null ? 0
+                        : attrs.fileKey().hashCode();
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return result;
+    }
+
+    /** Read the index file, the first time the index is used. */
+    private void load() {
+        if (entries != null) {
+            return;
+        }
+        entries = new HashMap<>();
+        if (!file.isFile()) {
+            return;
+        }
+        Trace.countRead();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath()),
+                        Utils.CHUNK_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i += 1) {
+                String name = in.readUTF();
+                Entry v = new Entry();
+                v.size = in.readLong();
+                v.mtime = in.readLong();
+                v.inode = in.readLong();
+                v.recorded = in.readLong();
+                v.code = in.readUTF();
+                entries.put(name, v);
+            }
+        } catch (IOException excp) {
+            entries.clear();
+        }
+    }
+}
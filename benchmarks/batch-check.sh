@@ -0,0 +1,62 @@
+#!/bin/sh
+# Check that a batch gives the same output and leaves the same stage as
+# running its commands one at a time.  Each case sets up a repository
+# in two scratch directories, runs its commands as separate gitlet runs
+# in one and as one batch in the other, then compares what they printed
+# and what status says afterwards.  Prints the cases that differ and
+# exits 1 if any do.
+set -e
+here=$(cd "$(dirname "$0")" && pwd)
+(cd "$here" && mvn -B -q package)
+gitlet="java -cp $here/target/benchmarks.jar gitlet.Main"
+scratch=$(mktemp -d)
+trap 'rm -rf "$scratch"' EXIT
+failed=0
+
+# Run case NAME: SETUP is shell run in both directories, COMMANDS the
+# gitlet commands, one per line.
+check() {
+    name=$1
+    setup=$2
+    commands=$3
+    for way in separate batch; do
+        mkdir "$scratch/$name-$way"
+        (cd "$scratch/$name-$way" && eval "$setup") > /dev/null
+    done
+    (cd "$scratch/$name-separate" && echo "$commands" | while read -r line
+     do
+         eval "$gitlet $line"
+     done && $gitlet status) > "$scratch/$name-separate.out" 2>&1
+    (cd "$scratch/$name-batch" && echo "$commands" | $gitlet batch \
+        && $gitlet status) > "$scratch/$name-batch.out" 2>&1
+    if ! diff "$scratch/$name-separate.out" "$scratch/$name-batch.out"
+    then
+        echo "$name: batch differs from separate commands"
+        failed=1
+    fi
+}
+
+# Adding a file back to its committed version unstages it.
+check unstage "
+    $gitlet init
+    echo v1 > a.txt
+    $gitlet add a.txt
+    $gitlet commit one
+    echo v2 > a.txt
+    $gitlet add a.txt
+    echo v1 > a.txt
+    echo b > b.txt" "add a.txt
+add b.txt"
+
+# Committing, then removing a committed file.
+check remove "
+    $gitlet init
+    echo v1 > a.txt
+    $gitlet add a.txt
+    $gitlet commit one
+    echo b > b.txt" "add b.txt
+commit \"add b\"
+rm a.txt
+status"
+
+exit $failed
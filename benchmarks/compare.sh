@@ -0,0 +1,29 @@
+#!/bin/sh
+# Print, for every benchmark and parameter setting in both BASE and NEW,
+# CSV results written by run.sh, the two scores and the change in
+# percent.  Scores are times, so a negative change is an improvement.
+# A change smaller than the two errors together is marked "noise".
+if [ $# -ne 2 ]; then
+    echo "usage: $0 BASE.csv NEW.csv" >&2
+    exit 2
+fi
+awk -F, '
+function key(   k, i) {
+    k = $1
+    for (i = 8; i <= NF; i += 1) {
+        k = k " " $i
+    }
+    gsub(/"|gitlet\./, "", k)
+    return k
+}
+FNR == 1 { next }
+FNR == NR { base[key()] = $5; error[key()] = $6; next }
+key() in base {
+    b = base[key()]
+    unit = $7
+    gsub(/"/, "", unit)
+    d = $5 - b
+    noise = (d < 0 ? -d : d) < error[key()] + $6 ? "noise" : ""
+    printf "%-60s %12.3f %12.3f %-6s %+7.1f%% %s\n", key(), b, $5, unit, \
+        (b == 0 ? 0 : d * 100 / b), noise
+}' "$1" "$2"
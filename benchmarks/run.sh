@@ -0,0 +1,19 @@
+#!/bin/sh
+# Build the benchmarks and run them in a scratch directory, saving the
+# results as CSV in RESULTS.  Any further arguments go to JMH, e.g.
+#   ./run.sh results/mine.csv RepoBenchmark -p historyDepth=1000
+set -e
+if [ $# -lt 1 ]; then
+    echo "usage: $0 RESULTS.csv [JMH options]" >&2
+    exit 2
+fi
+here=$(cd "$(dirname "$0")" && pwd)
+mkdir -p "$(dirname "$1")"
+results=$(cd "$(dirname "$1")" && pwd)/$(basename "$1")
+shift
+(cd "$here" && mvn -B -q package)
+scratch=$(mktemp -d)
+trap 'rm -rf "$scratch"' EXIT
+cd "$scratch"
+touch .gitlet-bench
+java -jar "$here/target/benchmarks.jar" -rf csv -rff "$results" "$@"
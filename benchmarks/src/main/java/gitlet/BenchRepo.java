@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/** Builds the repositories the Repo benchmarks run on.  Repo works on
+ *  the .gitlet folder of the working directory, so they are built there,
+ *  through Repo's public methods as a user would: FILES files of SIZE
+ *  bytes each in 16 directories, an initial commit of them all, then a
+ *  branch named other, and DEPTH commits on each of master and other,
+ *  each changing one file.  A last commit on each branch then changes a
+ *  fixed share of the files, so that a merge of other into master meets
+ *  every case: of each four files, one is changed on master only, one
+ *  on both (a conflict), one on other only, and one in eight is removed
+ *  on other.  The working directory must be empty or hold
+ *  MARKER, which run.sh creates, since everything else in it is
+ *  deleted.
+ *  @author Claire Ding
+ */
+class BenchRepo {
+
+    /** File that marks a directory as one the benchmarks may clear. */
+    static final String MARKER = ".gitlet-bench";
+    /** Number of directories the files are spread over. */
+    static final int DIRS = 16;
+
+    /** Return a cold Repo over a new repository in the working directory
+     *  with FILES files of SIZE bytes and DEPTH commits on each of two
+     *  branches, with master checked out.  The contents depend only on
+     *  the arguments.
+     *  @param files is the number of files.
+     *  @param size is the size of each file.
+     *  @param depth is the number of commits on each branch. */
+    static Repo build(int files, int size, int depth) throws IOException {
+        clear();
+        Random random = new Random(((long) files * 31 + size) * 31 + depth);
+        Repo rp = new Repo();
+        rp.init();
+        String[] names = new String[files];
+        for (int i = 0; i < files; i += 1) {
+            names[i] = name(i);
+            write(names[i], size, random);
+        }
+        rp.add(names);
+        rp.commit("base");
+        rp.branch("other");
+        for (int i = 0; i < depth; i += 1) {
+            String name = name(i % files);
+            write(name, size, random);
+            rp.add(name);
+            rp.commit("master " + i);
+        }
+        spread(rp, names, "master", 0, size, random);
+        rp.checkout3("other");
+        for (int i = 0; i < depth; i += 1) {
+            String name = name((i + files / 2) % files);
+            write(name, size, random);
+            rp.add(name);
+            rp.commit("other " + i);
+        }
+        spread(rp, names, "other", 1, size, random);
+        rp.checkout3("master");
+        rp.flush();
+        return new Repo();
+    }
+
+    /** Commit to the current BRANCH of RP new contents of the files
+     *  among NAMES whose number, less FIRST, is 0 or 1 modulo 4.  On any
+     *  branch but master, also remove those that are 2 modulo 8.
+     *  @param rp is the repository.
+     *  @param names are all the files.
+     *  @param branch is the branch checked out.
+     *  @param first is the offset of the files changed.
+     *  @param size is the size of each file.
+     *  @param random is the source of the letters. */
+    private static void spread(Repo rp, String[] names, String branch,
+                               int first, int size, Random random)
+            throws IOException {
+        for (int i = 0; i < names.length; i += 1) {
+            int k = Math.floorMod(i - first, 8);
+            if (k % 4 < 2) {
+                write(names[i], size, random);
+                rp.add(names[i]);
+            } else if (k == 2 && !branch.equals("master")) {
+                rp.rm(names[i]);
+            }
+        }
+        rp.commit(branch + " spread");
+    }
+
+    /** Return the SHA1 code of the commit at the front of BRANCH.
+     *  @param branch is a branch name. */
+    static String branch(String branch) {
+        return Utils.readContentsAsString(
+                Utils.join(".gitlet", "branching", branch));
+    }
+
+    /** Return the name of file I.
+     *  @param i is a file number. */
+    static String name(int i) {
+        return "d" + (i % DIRS) + "/f" + i + ".txt";
+    }
+
+    /** Write SIZE random lowercase letters and newlines to NAME.
+     *  @param name is the file name.
+     *  @param size is the number of bytes.
+     *  @param random is the source of the letters. */
+    static void write(String name, int size, Random random) {
+        byte[] text = new byte[size];
+        for (int i = 0; i < size; i += 1) {
+            text[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + random.nextInt(26));
+        }
+        File file = new File(name);
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, text);
+    }
+
+    /** Delete everything in the working directory but MARKER, after
+     *  checking that it is a directory the benchmarks may clear. */
+    static void clear() {
+        File cwd = new File(System.getProperty("user.dir"));
+        File[] all = cwd.listFiles();
+        if (all.length > 0 && !new File(cwd, MARKER).exists()) {
+            throw new IllegalStateException("run the benchmarks in an empty"
+                    + " directory, or one holding " + MARKER);
+        }
+        for (File f : all) {
+            if (!f.getName().equals(MARKER)) {
+                delete(f);
+            }
+        }
+        Utils.writeContents(new File(cwd, MARKER), "");
+    }
+
+    /** Delete F and, if it is a directory, everything in it.
+     *  @param f is a file or directory. */
+    private static void delete(File f) {
+        File[] inside = f.listFiles();
+        if (inside != null) {
+            for (File g : inside) {
+                delete(g);
+            }
+        }
+        f.delete();
+    }
+}
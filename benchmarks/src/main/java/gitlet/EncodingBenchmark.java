@@ -0,0 +1,156 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of writing and reading commits and the stage, in their
+ *  binary encodings and, for comparison, with Java serialization as
+ *  they were stored before.
+ *  @author Claire Ding
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+    /** Number of files staged. */
+    @Param({"10", "1000"})
+    public int fileCount;
+
+    /** A commit. */
+    private Commit commit;
+    /** Its encoding. */
+    private byte[] encoded;
+    /** It, serialized. */
+    private byte[] serialized;
+    /** A stage with FILECOUNT files staged for addition. */
+    private Stage stage;
+    /** A stage that is only ever added to and saved. */
+    private Stage journaled;
+    /** Number of times a file was added to JOURNALED. */
+    private int added;
+    /** Folder the stages are saved in. */
+    private File folder;
+    /** Folder JOURNALED is saved in. */
+    private File journalFolder;
+    /** File a stage is serialized to. */
+    private File serialFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        String parent = Utils.sha1("parent");
+        commit = new Commit("a commit message of an ordinary length",
+                parent, Utils.sha1("tree"));
+        encoded = commit.encode();
+        serialized = Utils.serialize(commit);
+        stage = new Stage();
+        for (int i = 0; i < fileCount; i += 1) {
+            stage.addToAddList(BenchRepo.name(i), Utils.sha1("" + i));
+        }
+        folder = Files.createTempDirectory("gitlet-bench").toFile();
+        journalFolder = Files.createTempDirectory("gitlet-bench").toFile();
+        serialFile = new File(folder, "serialized");
+        copy().save(folder);
+        Utils.writeObject(serialFile, stage);
+        journaled = Stage.read(journalFolder);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File dir : new File[] {folder, journalFolder}) {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /** Return a new Stage holding what STAGE holds. */
+    private Stage copy() {
+        Stage result = new Stage();
+        result.getAddList().putAll(stage.getAddList());
+        return result;
+    }
+
+    @Benchmark
+    public byte[] commitEncode() {
+        return commit.encode();
+    }
+
+    @Benchmark
+    public Commit commitDecode() {
+        return Commit.decode(commit.getShaID(), encoded);
+    }
+
+    @Benchmark
+    public byte[] commitSerialize() {
+        return Utils.serialize(commit);
+    }
+
+    @Benchmark
+    public Object commitDeserialize() throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
+    /** Writing a whole stage as a snapshot. */
+    @Benchmark
+    public Stage stageSave() {
+        Stage result = copy();
+        result.save(folder);
+        return result;
+    }
+
+    @Benchmark
+    public Stage stageRead() {
+        return Stage.read(folder);
+    }
+
+    /** Writing a whole stage with Java serialization. */
+    @Benchmark
+    public Stage stageWriteObject() {
+        Stage result = copy();
+        Utils.writeObject(serialFile, result);
+        return result;
+    }
+
+    @Benchmark
+    public Stage stageReadObject() {
+        return Utils.readObject(serialFile, Stage.class);
+    }
+
+    /** Staging a file again with new content and saving, as add does:
+     *  an append to the journal, and now and then a new snapshot.  The
+     *  stage holds at most FILECOUNT files. */
+    @Benchmark
+    public Stage stageAddAndSave() {
+        journaled.addToAddList(BenchRepo.name(added % fileCount),
+                Utils.sha1("" + added));
+        added += 1;
+        journaled.save(journalFolder);
+        return journaled;
+    }
+}
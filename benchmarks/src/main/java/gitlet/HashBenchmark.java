@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of hashing content: Utils.sha1 of bytes and of a file,
+ *  and making a Blob, which hashes its file.
+ *  @author Claire Ding
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    /** Bytes hashed. */
+    @Param({"1024", "65536", "1048576"})
+    public int fileSize;
+
+    /** The content. */
+    private byte[] content;
+    /** A file holding CONTENT. */
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        content = new byte[fileSize];
+        new Random(fileSize).nextBytes(content);
+        file = File.createTempFile("gitlet-bench", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public String sha1Bytes() {
+        return Utils.sha1(file.getPath(), content);
+    }
+
+    @Benchmark
+    public String sha1File() {
+        return Utils.sha1(file.getPath(), file);
+    }
+
+    @Benchmark
+    public String blob() {
+        return new Blob(file.getPath()).getBlobCode();
+    }
+}
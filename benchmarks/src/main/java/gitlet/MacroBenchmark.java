@@ -0,0 +1,418 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Times whole gitlet commands on a repository made by RepoGenerator,
+ *  which is the working directory.  Each command is run RUNS times, each
+ *  time in a new JVM as a user runs it, or with --in-process in this
+ *  one, on a new Repo, as a batch or the daemon runs it (init always
+ *  gets a new JVM, in an empty directory).  The repository needs the
+ *  branches topic0 and topic1, which checkout and merge use.  What a command
+ *  needs first, such as files to add, and what undoes it, such as a
+ *  reset to where master was, is done between the timed runs.  For each
+ *  command the report gives the percentiles of the wall time, and the
+ *  mean bytes read and written (from /proc/self/io, so only on Linux)
+ *  and the peak heap of the command itself: the most heap seen in use
+ *  while it ran, sampled every SAMPLE_MS, less what was live just
+ *  before it started, so that the harness does not count in-process.
+ *
+ *  Usage: java gitlet.MacroBenchmark [--runs N] [--edits N]
+ *  [--in-process true] [--csv FILE] [--commands init,add,...]
+ *  @author Claire Ding
+ */
+public class MacroBenchmark {
+
+    /** Every command, in the order they are run. */
+    static final List<String> COMMANDS = List.of("init", "add", "commit",
+            "status", "log", "global-log", "find", "checkout", "reset",
+            "merge");
+    /** Number of first parents reset goes back. */
+    static final int BACK = 50;
+    /** Prefix of the line a child JVM reports its measurements on. */
+    static final String REPORT = "gitlet-macro:";
+    /** Milliseconds between samples of the heap in use. */
+    static final long SAMPLE_MS = 1;
+
+    /** Timed runs of each command. */
+    private int runs = 10;
+    /** Files changed before each add and commit. */
+    private int edits = 10;
+    /** Whether commands run in this JVM. */
+    private boolean inProcess;
+    /** Source of the contents of changed files. */
+    private final Random random = new Random(1);
+    /** Directory of the repository. */
+    private final Path repoDir = Path.of(System.getProperty("user.dir"));
+
+    /** The measurements of one run of a command. */
+    static class Sample {
+        /** Wall time, in nanoseconds. */
+        long nanos;
+        /** Bytes read, or -1 if unknown. */
+        long read = -1;
+        /** Bytes written, or -1 if unknown. */
+        long written = -1;
+        /** Most heap used while the command ran, beyond what was live
+         *  before it, in bytes. */
+        long heap;
+    }
+
+    /** Run the benchmark as ARGS say, or, with --child, run the command
+     *  in the rest of ARGS and report on it.
+     *  @param args are the options. */
+    public static void main(String... args) throws Exception {
+        if (args.length > 0 && args[0].equals("--child")) {
+            PrintStream stdout = System.out;
+            Sample s = measure(Arrays.copyOfRange(args, 1, args.length));
+            stdout.printf("%s %d %d %d %d%n", REPORT, s.nanos, s.read,
+                    s.written, s.heap);
+            return;
+        }
+        Map<String, String> options = RepoGenerator.options(args);
+        MacroBenchmark bench = new MacroBenchmark();
+        bench.runs = Integer.parseInt(options.getOrDefault("runs",
+                "" + bench.runs));
+        bench.edits = Integer.parseInt(options.getOrDefault("edits",
+                "" + bench.edits));
+        bench.inProcess = Boolean.parseBoolean(options.getOrDefault(
+                "in-process", "false"));
+        List<String> commands = options.containsKey("commands")
+                ? Arrays.asList(options.get("commands").split(","))
+                : COMMANDS;
+        if (!new File(".gitlet").isDirectory()) {
+            System.err.println("MacroBenchmark: run it in a repository made"
+                    + " by RepoGenerator");
+            System.exit(2);
+        }
+        List<String> rows = new ArrayList<>();
+        String mode = bench.inProcess ? "in-process" : "new-jvm";
+        System.out.printf("Commands run %s; heap is the most sampled every"
+                + " %d ms above the heap live before the command.%n",
+                bench.inProcess ? "in this JVM, each on a new Repo"
+                : "each in a new JVM", SAMPLE_MS);
+        System.out.printf("%-10s %5s %9s %9s %9s %9s %11s %11s %9s%n",
+                "command", "runs", "p50 ms", "p90 ms", "p99 ms", "max ms",
+                "read KB", "written KB", "heap MB");
+        for (String command : commands) {
+            List<Sample> samples = new ArrayList<>();
+            for (int i = 0; i < bench.runs; i += 1) {
+                samples.add(bench.runOnce(command));
+            }
+            rows.add(report(command, samples) + "," + mode);
+        }
+        if (options.containsKey("csv")) {
+            try (PrintWriter out = new PrintWriter(options.get("csv"),
+                    StandardCharsets.UTF_8)) {
+                out.println("command,runs,p50_ms,p90_ms,p99_ms,max_ms,"
+                        + "read_kb,written_kb,heap_mb,mode");
+                rows.forEach(out::println);
+            }
+        }
+    }
+
+    /** Prepare COMMAND, run and measure it once, and undo it.
+     *  @param command is one of COMMANDS. */
+    private Sample runOnce(String command) throws Exception {
+        String master = BenchRepo.branch("master");
+        switch (command) {
+        case "init": {
+            Path dir = Files.createTempDirectory("gitlet-init");
+            Sample s = time(dir, "init");
+            deleteAll(dir.toFile());
+            return s;
+        }
+        case "add": {
+            String[] names = edit();
+            Sample s = time(repoDir, prepend("add", names));
+            gitlet("reset", master);
+            return s;
+        }
+        case "commit": {
+            gitlet(prepend("add", edit()));
+            Sample s = time(repoDir, "commit", "macro benchmark");
+            gitlet("reset", master);
+            return s;
+        }
+        case "status":
+        case "log":
+        case "global-log":
+            return time(repoDir, command);
+        case "find":
+            return time(repoDir, "find",
+                    new Repo().readCommit(master).getCommitMessage());
+        case "checkout": {
+            Sample s = time(repoDir, "checkout", "topic0");
+            gitlet("checkout", "master");
+            return s;
+        }
+        case "reset": {
+            Repo rp = new Repo();
+            Commit back = rp.readCommit(master);
+            for (int i = 0; i < BACK && back.getParentID() != null;
+                 i += 1) {
+                back = rp.readCommit(back.getParentID());
+            }
+            Sample s = time(repoDir, "reset", back.getShaID());
+            gitlet("reset", master);
+            return s;
+        }
+        case "merge": {
+            Sample s = time(repoDir, "merge", "topic1");
+            gitlet("reset", master);
+            return s;
+        }
+        default:
+            throw new IllegalArgumentException("no command " + command);
+        }
+    }
+
+    /** Return WORDS with FIRST in front.
+     *  @param first is the first word.
+     *  @param words are the others. */
+    private static String[] prepend(String first, String... words) {
+        String[] result = new String[words.length + 1];
+        result[0] = first;
+        System.arraycopy(words, 0, result, 1, words.length);
+        return result;
+    }
+
+    /** Change EDITS files of master, and return their names. */
+    private String[] edit() {
+        List<String> names = new Repo().workingFiles();
+        String[] result = new String[edits];
+        for (int i = 0; i < edits; i += 1) {
+            result[i] = names.get(random.nextInt(names.size()));
+            Utils.writeContents(new File(result[i]), "macro benchmark "
+                    + random.nextLong() + "\n");
+        }
+        return result;
+    }
+
+    /** Run the gitlet command ARGS in this JVM, untimed, with its output
+     *  discarded.
+     *  @param args is the command. */
+    private static void gitlet(String... args) throws IOException {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Main.run(new Repo(), args);
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    /** Run the gitlet command ARGS in DIR and return its measurements.
+     *  It runs in this JVM with --in-process, except for an init
+     *  elsewhere than the working directory, the only one a Repo can
+     *  work on.
+     *  @param dir is where to run it.
+     *  @param args is the command. */
+    private Sample time(Path dir, String... args) throws Exception {
+        if (inProcess && dir.equals(repoDir)) {
+            return measure(args);
+        }
+        List<String> cmd = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java")
+                        .toString(),
+                "-cp", System.getProperty("java.class.path"),
+                MacroBenchmark.class.getName(), "--child"));
+        cmd.addAll(Arrays.asList(args));
+        long start = System.nanoTime();
+        Process p = new ProcessBuilder(cmd).directory(dir.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        Sample result = null;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                p.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                if (line.startsWith(REPORT)) {
+                    String[] f = line.substring(REPORT.length()).trim()
+                            .split(" ");
+                    result = new Sample();
+                    result.read = Long.parseLong(f[1]);
+                    result.written = Long.parseLong(f[2]);
+                    result.heap = Long.parseLong(f[3]);
+                }
+            }
+        }
+        if (p.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("gitlet " + String.join(" ",
+                    args) + " failed");
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /** Run the gitlet command ARGS in this JVM on a new Repo, with its
+     *  output discarded, and return its measurements.
+     *  @param args is the command. */
+    static Sample measure(String... args) throws IOException {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Sample result = new Sample();
+        HeapWatch heap = new HeapWatch();
+        long[] before = io();
+        long start = System.nanoTime();
+        try {
+            Main.run(new Repo(), args);
+        } finally {
+            result.nanos = System.nanoTime() - start;
+            result.heap = heap.stop();
+            System.setOut(stdout);
+        }
+        long[] after = io();
+        if (before != null && after != null) {
+            result.read = after[0] - before[0];
+            result.written = after[1] - before[1];
+        }
+        return result;
+    }
+
+    /** Watches the heap while one command runs.  The heap is sampled as
+     *  a whole, so the pools are seen at the same moment, unlike their
+     *  peaks, which each come at its own time.  A peak shorter than
+     *  SAMPLE_MS may fall between two samples. */
+    static class HeapWatch {
+        /** The heap. */
+        private final MemoryMXBean memory =
+                ManagementFactory.getMemoryMXBean();
+        /** Heap live when the watch began, after a collection. */
+        private final long live;
+        /** Most heap seen in use. */
+        private final AtomicLong most = new AtomicLong();
+        /** Takes the samples until stopped. */
+        private final Thread sampler;
+        /** Whether stop was called. */
+        private volatile boolean done;
+
+        /** Collect garbage, note what is live and start sampling. */
+        HeapWatch() {
+            System.gc();
+            live = memory.getHeapMemoryUsage().getUsed();
+            sampler = new Thread(() -> {
+                while (!done) {
+                    sample();
+                    try {
+                        Thread.sleep(SAMPLE_MS);
+                    } catch (InterruptedException excp) {
+                        return;
+                    }
+                }
+            }, "heap-watch");
+            sampler.setDaemon(true);
+            sampler.start();
+        }
+
+        /** Note the heap in use now. */
+        private void sample() {
+            most.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(),
+                    Math::max);
+        }
+
+        /** Stop sampling and return the most heap seen in use beyond what
+         *  was live at the start, in bytes. */
+        long stop() {
+            sample();
+            done = true;
+            try {
+                sampler.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            return Math.max(0, most.get() - live);
+        }
+    }
+
+    /** Return the bytes this process has read and written, rchar and
+     *  wchar of /proc/self/io, or null where there is no such file. */
+    static long[] io() {
+        File proc = new File("/proc/self/io");
+        if (!proc.canRead()) {
+            return null;
+        }
+        long[] result = new long[2];
+        try {
+            for (String line : Files.readAllLines(proc.toPath())) {
+                if (line.startsWith("rchar:")) {
+                    result[0] = Long.parseLong(line.substring(6).trim());
+                } else if (line.startsWith("wchar:")) {
+                    result[1] = Long.parseLong(line.substring(6).trim());
+                }
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return result;
+    }
+
+    /** Print the line of the report on the SAMPLES of COMMAND and return
+     *  it as CSV.
+     *  @param command is the command.
+     *  @param samples are its measurements. */
+    static String report(String command, List<Sample> samples) {
+        List<Long> nanos = new ArrayList<>();
+        long read = 0;
+        long written = 0;
+        long heap = 0;
+        for (Sample s : samples) {
+            nanos.add(s.nanos);
+            read += s.read;
+            written += s.written;
+            heap = Math.max(heap, s.heap);
+        }
+        Collections.sort(nanos);
+        int n = samples.size();
+        double[] row = {percentile(nanos, 50), percentile(nanos, 90),
+            percentile(nanos, 99), nanos.get(n - 1) / 1e6,
+            samples.get(0).read < 0 ? Double.NaN : read / 1024.0 / n,
+            samples.get(0).written < 0 ? Double.NaN : written / 1024.0 / n,
+            heap / 1048576.0};
+        System.out.printf("%-10s %5d %9.1f %9.1f %9.1f %9.1f %11.1f %11.1f "
+                + "%9.1f%n", command, n, row[0], row[1], row[2], row[3],
+                row[4], row[5], row[6]);
+        StringBuilder csv = new StringBuilder(command + "," + n);
+        for (double v : row) {
+            csv.append(String.format(",%.3f", v));
+        }
+        return csv.toString();
+    }
+
+    /** Return the Pth percentile of the sorted NANOS, in milliseconds,
+     *  by the nearest-rank method.
+     *  @param nanos are times in nanoseconds, sorted.
+     *  @param p is a percentage. */
+    static double percentile(List<Long> nanos, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * nanos.size());
+        return nanos.get(Math.max(rank, 1) - 1) / 1e6;
+    }
+
+    /** Delete F and everything in it.
+     *  @param f is a file or directory. */
+    private static void deleteAll(File f) {
+        File[] inside = f.listFiles();
+        if (inside != null) {
+            for (File g : inside) {
+                deleteAll(g);
+            }
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the merge and status paths of Repo, on a repository
+ *  built by BenchRepo in the working directory.
+ *  @author Claire Ding
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepoBenchmark {
+
+    /** Number of tracked files. */
+    @Param({"100", "1000"})
+    public int fileCount;
+    /** Bytes in each file. */
+    @Param({"1024"})
+    public int fileSize;
+    /** Number of commits on each side of the merge. */
+    @Param({"10", "1000"})
+    public int historyDepth;
+
+    /** The repository. */
+    private Repo repo;
+    /** SHA1 codes of the fronts of master and other. */
+    private String master, other;
+    /** The fronts of master and other, and their split point. */
+    private Commit curr, given, split;
+    /** Files of the fronts of master and other and of the split point. */
+    private HashMap<String, String> currBlob, givenBlob, splitBlob;
+    /** Every file of the split point, master and other. */
+    private ArrayList<String> files;
+    /** Standard output, while it is discarded. */
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        repo = BenchRepo.build(fileCount, fileSize, historyDepth);
+        master = BenchRepo.branch("master");
+        other = BenchRepo.branch("other");
+        curr = repo.readCommit(master);
+        given = repo.readCommit(other);
+        split = repo.findSplitPoint(master, other);
+        currBlob = repo.blobsOf(curr);
+        givenBlob = repo.blobsOf(given);
+        splitBlob = repo.blobsOf(split);
+        files = repo.makeArray(split, curr, given);
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    /** The split point of master and other, with the commit graph
+     *  loaded. */
+    @Benchmark
+    public Commit findSplitPoint() {
+        return repo.findSplitPoint(master, other);
+    }
+
+    /** The working directory of the merge, which superHelpful changes,
+     *  put back as master has it before each call.  The reset is not
+     *  timed. */
+    @State(Scope.Benchmark)
+    public static class WorkingTree {
+        @Setup(Level.Invocation)
+        public void reset(RepoBenchmark bench) {
+            bench.repo.reset(bench.master);
+        }
+    }
+
+    /** Classifying every file of the merge of other into master, and
+     *  what that does to the working directory: the files BenchRepo
+     *  changed on other only are written, those it removed on other are
+     *  deleted, and those changed on both sides are written as conflicts
+     *  and staged.  TREE puts the working directory back between calls.
+     *  @param tree is the working directory, as master has it. */
+    @Benchmark
+    public HashMap<String, String> superHelpful(WorkingTree tree) {
+        return repo.superHelpful(givenBlob, currBlob, splitBlob, files,
+                curr, given);
+    }
+
+    /** A whole status command, from a refreshed Repo, with its output
+     *  discarded. */
+    @Benchmark
+    public void status() {
+        repo.refresh();
+        repo.status();
+    }
+}
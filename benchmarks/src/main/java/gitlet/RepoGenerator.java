@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/** Generates a large repository in the working directory, which must be
+ *  empty, by running gitlet commands on one Repo, as a batch does.  The
+ *  files are spread over two levels of DIRS directories.  After the
+ *  first commit of every file there are BRANCHES topic branches, and
+ *  commits are made in runs of RUN, going round master and the topic
+ *  branches.  Each commit changes EDITS files from a share of the files
+ *  that only its branch changes.  After every MERGEEVERY commits a topic
+ *  branch is merged into master.  No merge can conflict, since each
+ *  branch changes only its own files, and the merges make a wide DAG.
+ *  Every file content and every choice comes from a Random with the
+ *  given seed, so two runs with the same options make the same
+ *  repository, except for the time stamps and so the commit codes.
+ *
+ *  Usage: java gitlet.RepoGenerator [--commits N] [--files N]
+ *  [--size BYTES] [--branches N] [--merge-every N] [--edits N]
+ *  [--seed N]
+ *  @author Claire Ding
+ */
+public class RepoGenerator {
+
+    /** Directories at each of the two levels. */
+    static final int DIRS = 32;
+    /** Commits made on a branch before moving to the next one. */
+    static final int RUN = 10;
+    /** Commits between writing back the stage and index. */
+    static final int FLUSH = 100;
+
+    /** Commits to make, merges included. */
+    private int commits = 1000;
+    /** Tracked files. */
+    private int files = 1000;
+    /** Bytes in each file. */
+    private int size = 1024;
+    /** Topic branches. */
+    private int branches = 4;
+    /** Commits between merges into master. */
+    private int mergeEvery = 50;
+    /** Files changed by each commit. */
+    private int edits = 3;
+    /** Seed of RANDOM. */
+    private long seed = 1;
+
+    /** Source of every content and choice. */
+    private Random random;
+    /** The repository. */
+    private Repo repo;
+    /** The branch checked out. */
+    private String current = "master";
+
+    /** Generate a repository as ARGS say.
+     *  @param args are the options. */
+    public static void main(String... args) throws IOException {
+        RepoGenerator gen = new RepoGenerator();
+        Map<String, String> options = options(args);
+        gen.commits = Integer.parseInt(options.getOrDefault("commits",
+                "" + gen.commits));
+        gen.files = Integer.parseInt(options.getOrDefault("files",
+                "" + gen.files));
+        gen.size = Integer.parseInt(options.getOrDefault("size",
+                "" + gen.size));
+        gen.branches = Integer.parseInt(options.getOrDefault("branches",
+                "" + gen.branches));
+        gen.mergeEvery = Integer.parseInt(options.getOrDefault(
+                "merge-every", "" + gen.mergeEvery));
+        gen.edits = Integer.parseInt(options.getOrDefault("edits",
+                "" + gen.edits));
+        gen.seed = Long.parseLong(options.getOrDefault("seed",
+                "" + gen.seed));
+        File[] here = new File(System.getProperty("user.dir")).listFiles();
+        if (here.length > 0) {
+            System.err.println("RepoGenerator: the directory must be empty");
+            System.exit(2);
+        }
+        gen.generate();
+    }
+
+    /** Return the options in ARGS, each --name value, by name.
+     *  @param args are the command line arguments. */
+    static Map<String, String> options(String... args) {
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("bad option " + args[i]);
+            }
+            result.put(args[i].substring(2), args[i + 1]);
+        }
+        if (args.length % 2 != 0) {
+            throw new IllegalArgumentException("no value for "
+                    + args[args.length - 1]);
+        }
+        return result;
+    }
+
+    /** Return the name of file I.
+     *  @param i is a file number. */
+    static String name(int i) {
+        return String.format("d%02d/d%02d/f%d.txt", i % DIRS,
+                i / DIRS % DIRS, i);
+    }
+
+    /** Make the repository. */
+    private void generate() throws IOException {
+        random = new Random(seed);
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        repo = new Repo();
+        repo.init();
+        String[] names = new String[files];
+        for (int i = 0; i < files; i += 1) {
+            names[i] = name(i);
+            write(names[i]);
+        }
+        repo.add(names);
+        repo.commit("add " + files + " files");
+        for (int b = 0; b < branches; b += 1) {
+            repo.branch(topic(b));
+        }
+        for (int c = 1; c < commits; c += 1) {
+            if (branches > 0 && c % mergeEvery == 0) {
+                checkout("master");
+                repo.merge(topic(c / mergeEvery % branches));
+            } else {
+                int b = c / RUN % (branches + 1);
+                checkout(b == branches ? "master" : topic(b));
+                edit(b, c);
+            }
+            if (c % FLUSH == 0) {
+                repo.flush();
+                System.err.printf("%d commits, %d s%n", c,
+                        (System.nanoTime() - start) / 1_000_000_000);
+            }
+        }
+        checkout("master");
+        repo.flush();
+        System.setOut(stdout);
+        System.err.printf("%d commits of %d files in %d s%n", commits,
+                files, (System.nanoTime() - start) / 1_000_000_000);
+    }
+
+    /** Return the name of topic branch B.
+     *  @param b is a topic number. */
+    private static String topic(int b) {
+        return "topic" + b;
+    }
+
+    /** Check out BRANCH unless it is the current one.
+     *  @param branch is a branch name. */
+    private void checkout(String branch) {
+        if (!branch.equals(current)) {
+            repo.checkout3(branch);
+            current = branch;
+        }
+    }
+
+    /** Commit number C on the branch that owns the files whose numbers
+     *  are B modulo BRANCHES + 1, changing EDITS of them.
+     *  @param b is the number of the share of the files.
+     *  @param c is the commit number. */
+    private void edit(int b, int c) throws IOException {
+        int share = (files - b + branches) / (branches + 1);
+        String[] changed = new String[Math.min(edits, share)];
+        for (int i = 0; i < changed.length; i += 1) {
+            changed[i] = name(b + (branches + 1) * random.nextInt(share));
+            write(changed[i]);
+        }
+        repo.add(changed);
+        repo.commit(current + " " + c);
+    }
+
+    /** Write SIZE random lowercase letters and newlines to NAME.
+     *  @param name is the file name. */
+    private void write(String name) {
+        byte[] text = new byte[size];
+        for (int i = 0; i < size; i += 1) {
+            text[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + random.nextInt(26));
+        }
+        File file = new File(name);
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, text);
+    }
+}